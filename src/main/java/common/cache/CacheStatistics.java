@@ -0,0 +1,62 @@
+package common.cache;
+
+/**
+ * Snapshot of counters of single cache region
+ */
+public class CacheStatistics
+{
+    private final String name;
+    private final int size;
+    private final int maxSize;
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+
+    CacheStatistics(String name, int size, int maxSize, long hits, long misses, long evictions)
+    {
+        this.name = name;
+        this.size = size;
+        this.maxSize = maxSize;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return part of requests served from cache (0 - 1)
+     */
+    public double getHitRatio() {
+        return hits + misses > 0 ? (double) hits / (hits + misses) : 0;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s[size=%d/%d, hits=%d, misses=%d, evictions=%d, hit ratio=%.2f]",
+                name, size, maxSize, hits, misses, evictions, getHitRatio());
+    }
+}
@@ -0,0 +1,130 @@
+package common.cache;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * In-process cache region of limited size. When it is full, least recently used entry is evicted.
+ * Values are loaded on miss by provided loader, outside of cache lock, so slow loads don't block other readers.
+ * Null values are never cached. Safe to use by many threads. Value, which key was evicted while it was loaded, isn't cached,
+ * as it could be loaded from data, that eviction was made for. Loads of keys, that don't match eviction, are cached.
+ * @param <K> type of keys
+ * @param <V> type of cached values
+ */
+public class LruCache<K, V>
+{
+    private final String name;
+    private final int maxEntries;
+    private final LinkedHashMap<K, V> entries;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private final Set<Load<K>> loads = new HashSet<>();                                                                 // Loads in progress
+
+    /**
+     * @param name region name, used in statistics
+     * @param maxEntries maximum number of cached values
+     */
+    public LruCache(String name, int maxEntries)
+    {
+        this.name = name;
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<K, V>(16, 0.75f, true)                                                         // Access order, so eldest entry is the least recently used one
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest)
+            {
+                boolean full = size() > LruCache.this.maxEntries;
+                if(full)
+                    evictions++;
+                return full;
+            }
+        };
+    }
+
+    /**
+     * Gets cached value or loads it, if it isn't cached
+     * @param loader loads value of key on miss
+     */
+    public V get(K key, Function<K, V> loader)
+    {
+        Load<K> load;
+        synchronized(this)
+        {
+            V value = entries.get(key);
+            if(value != null)
+            {
+                hits++;
+                return value;
+            }
+            misses++;
+            load = new Load<>(key);
+            loads.add(load);
+        }
+        V value = null;
+        try
+        {
+            value = loader.apply(key);
+            return value;
+        }
+        finally
+        {
+            synchronized(this)
+            {
+                loads.remove(load);
+                if(value != null && !load.evicted)
+                    entries.put(key, value);
+            }
+        }
+    }
+
+    /**
+     * Evicts entries, which keys match provided condition
+     */
+    public synchronized void evict(Predicate<K> condition)
+    {
+        int size = entries.size();
+        for(Load<K> load : loads)
+        {
+            if(condition.test(load.key))
+                load.evicted = true;
+        }
+        entries.keySet().removeIf(condition);
+        evictions += size - entries.size();
+    }
+
+    /**
+     * Evicts all entries
+     */
+    public synchronized void clear()
+    {
+        loads.forEach(load -> load.evicted = true);
+        evictions += entries.size();
+        entries.clear();
+    }
+
+    public synchronized CacheStatistics getStatistics()
+    {
+        return new CacheStatistics(name, entries.size(), maxEntries, hits, misses, evictions);
+    }
+
+    /**
+     * Value being loaded, compared by identity, so each miss has its own load even for the same key
+     */
+    private static class Load<K>
+    {
+        private final K key;
+        private boolean evicted;                                                                                        // Guarded by cache
+
+        Load(K key)
+        {
+            this.key = key;
+        }
+    }
+}
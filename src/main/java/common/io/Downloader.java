@@ -0,0 +1,233 @@
+package common.io;
+
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Downloads files over http.
+ * - sources are fetched concurrently,
+ * - requests are conditional (If-None-Match, If-Modified-Since), so unchanged payloads are not transferred again,
+ * - gzip compressed responses are accepted,
+ * - failed requests are retried with jittered exponential backoff,
+ * - payload is written to temporary file and then atomically moved in place of target file,
+ *   so readers never see partially written file.
+ * Instances are thread safe.
+ */
+public class Downloader
+{
+    /**
+     * Suffix of temporary files, created while downloading
+     */
+    public static final String TEMP_SUFFIX = ".part";
+
+    private static final Logger logger = Logger.getLogger(Downloader.class);
+
+    private final int threads;
+    private final int timeout;
+    private final int maxAttempts;
+    private final long backoff;
+    private final Map<String, String> eTags = new ConcurrentHashMap<>();                                                // K: url, V: ETag of last downloaded payload
+
+    /**
+     * @param threads number of concurrent downloads
+     * @param timeout connect and read timeout in milliseconds
+     * @param maxAttempts how many times each download is attempted before giving up
+     * @param backoff delay before first retry in milliseconds, doubled with each next retry
+     */
+    public Downloader(int threads, int timeout, int maxAttempts, long backoff)
+    {
+        this.threads = threads;
+        this.timeout = timeout;
+        this.maxAttempts = maxAttempts;
+        this.backoff = backoff;
+    }
+
+    public Downloader()
+    {
+        this(4, 30000, 4, 1000);
+    }
+
+    /**
+     * Downloads all sources concurrently and waits until they are finished.
+     * @param sources K: url to download, V: target file
+     * @return results in the same order as sources
+     */
+    public Map<String, Result> downloadAll(Map<String, File> sources)
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, sources.size())));
+        try
+        {
+            Map<String, Future<Result>> futures = new LinkedHashMap<>();
+            sources.forEach((url, target) -> futures.put(url, executor.submit(() -> download(url, target))));
+            Map<String, Result> results = new LinkedHashMap<>();
+            for(Map.Entry<String, Future<Result>> entry : futures.entrySet())
+            {
+                try
+                {
+                    results.put(entry.getKey(), entry.getValue().get());
+                }
+                catch (ExecutionException e)
+                {
+                    logger.error("Error while downloading " + entry.getKey(), e.getCause());
+                    results.put(entry.getKey(), Result.FAILED);
+                }
+            }
+            return results;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while downloading files", e);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Downloads single source, retrying on network and server errors.
+     * @param url url to download
+     * @param target file, where payload is saved
+     * @return result of download
+     */
+    public Result download(String url, File target)
+    {
+        for(int attempt = 1; ; attempt++)
+        {
+            try
+            {
+                return tryDownload(url, target);
+            }
+            catch (ClientErrorException e)
+            {
+                logger.error("Couldn't download " + url + ": " + e.getMessage());
+                return Result.FAILED;
+            }
+            catch (IOException e)
+            {
+                if(attempt >= maxAttempts)
+                {
+                    logger.error("Couldn't download " + url + " after " + attempt + " attempts", e);
+                    return Result.FAILED;
+                }
+                long delay = (long) (backoff * (1L << (attempt - 1)) * ThreadLocalRandom.current().nextDouble(0.5, 1.5));
+                logger.warn("Download of " + url + " failed (" + e.getMessage() + "), retrying in " + delay + "ms");
+                try
+                {
+                    Thread.sleep(delay);
+                }
+                catch (InterruptedException ie)
+                {
+                    Thread.currentThread().interrupt();
+                    return Result.FAILED;
+                }
+            }
+        }
+    }
+
+    private Result tryDownload(String url, File target) throws IOException
+    {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try
+        {
+            connection.setConnectTimeout(timeout);
+            connection.setReadTimeout(timeout);
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+            if(target.exists())
+            {
+                String eTag = eTags.get(url);
+                if(eTag != null)
+                    connection.setRequestProperty("If-None-Match", eTag);
+                connection.setIfModifiedSince(target.lastModified());                                                  // Target's modification time is set to Last-Modified of its payload
+            }
+            int status = connection.getResponseCode();
+            if(status == HttpURLConnection.HTTP_NOT_MODIFIED)
+                return Result.NOT_MODIFIED;
+            if(status >= 500)
+                throw new IOException("Server responded with " + status);
+            if(status != HttpURLConnection.HTTP_OK)
+                throw new ClientErrorException("Server responded with " + status);
+
+            Path targetPath = target.toPath().toAbsolutePath();
+            Files.createDirectories(targetPath.getParent());
+            Path tempFile = Files.createTempFile(targetPath.getParent(), "." + target.getName(), TEMP_SUFFIX);
+            try
+            {
+                try(InputStream inputStream = "gzip".equalsIgnoreCase(connection.getContentEncoding())
+                        ? new GZIPInputStream(connection.getInputStream())
+                        : connection.getInputStream())
+                {
+                    Files.copy(inputStream, tempFile, StandardCopyOption.REPLACE_EXISTING);
+                }
+                if(connection.getLastModified() > 0)
+                    Files.setLastModifiedTime(tempFile, FileTime.fromMillis(connection.getLastModified()));
+                move(tempFile, targetPath);
+            }
+            finally
+            {
+                Files.deleteIfExists(tempFile);
+            }
+
+            String eTag = connection.getHeaderField("ETag");
+            if(eTag != null)
+                eTags.put(url, eTag);
+            else
+                eTags.remove(url);
+            return Result.DOWNLOADED;
+        }
+        finally
+        {
+            connection.disconnect();
+        }
+    }
+
+    private static void move(Path source, Path target) throws IOException
+    {
+        try
+        {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (AtomicMoveNotSupportedException e)
+        {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    public enum Result
+    {
+        DOWNLOADED, NOT_MODIFIED, FAILED
+    }
+
+    /**
+     * Thrown on 4xx responses, which are not worth retrying
+     */
+    private static class ClientErrorException extends IOException
+    {
+        private static final long serialVersionUID = 1L;
+
+        ClientErrorException(String message)
+        {
+            super(message);
+        }
+    }
+}
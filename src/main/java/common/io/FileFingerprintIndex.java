@@ -0,0 +1,136 @@
+package common.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps fingerprint (size, last modification time and content hash) of each file in watched directory.
+ * Used to decide, if files really changed since they were last processed.
+ * Content is hashed only when size or modification time differs from indexed one.
+ */
+public class FileFingerprintIndex
+{
+    private final Path directory;
+    private final Map<Path, Fingerprint> fingerprints = new HashMap<>();                                                // K: file, V: fingerprint of its last processed version
+
+    public FileFingerprintIndex(Path directory)
+    {
+        this.directory = directory;
+    }
+
+    /**
+     * Compares files in directory with indexed fingerprints.
+     * Index is not updated with changed files until they are committed, so failed processing will be retried on next scan.
+     * File, that disappears while it's scanned (eg. replaced by downloader), is skipped and reported by the next scan.
+     * @return map of changed (or new) files and their current fingerprints, empty if nothing changed
+     */
+    public synchronized Map<Path, Fingerprint> scan() throws IOException
+    {
+        Map<Path, Fingerprint> changes = new HashMap<>();
+        if(!Files.isDirectory(directory))
+            return changes;
+        Set<Path> present = new HashSet<>();
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(directory))
+        {
+            for(Path file : files)
+            {
+                try
+                {
+                    BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                    if(!attributes.isRegularFile() || file.getFileName().toString().endsWith(Downloader.TEMP_SUFFIX))  // Files being downloaded are not ready yet
+                        continue;
+                    present.add(file);
+                    Fingerprint indexed = fingerprints.get(file);
+                    long lastModified = attributes.lastModifiedTime().toMillis();
+                    if(indexed != null && indexed.size == attributes.size() && indexed.lastModified == lastModified)
+                        continue;
+                    Fingerprint current = new Fingerprint(attributes.size(), lastModified, hash(file));
+                    if(indexed != null && Arrays.equals(indexed.hash, current.hash))                                    // File was only rewritten with the same content
+                        fingerprints.put(file, current);
+                    else
+                        changes.put(file, current);
+                }
+                catch (NoSuchFileException e)                                                                           // File was deleted or moved after it was listed
+                {
+                }
+            }
+        }
+        fingerprints.keySet().retainAll(present);
+        return changes;
+    }
+
+    /**
+     * Marks provided files as processed.
+     * @param changes result of previous scan
+     */
+    public synchronized void commit(Map<Path, Fingerprint> changes)
+    {
+        fingerprints.putAll(changes);
+    }
+
+    /**
+     * Forgets all fingerprints, so each file will be reported as changed on next scan.
+     */
+    public synchronized void clear()
+    {
+        fingerprints.clear();
+    }
+
+    private static byte[] hash(Path file) throws IOException
+    {
+        MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[8192];
+        try(InputStream inputStream = Files.newInputStream(file))
+        {
+            int read;
+            while((read = inputStream.read(buffer)) != -1)
+                digest.update(buffer, 0, read);
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Size, modification time and content hash of single file
+     */
+    public static class Fingerprint
+    {
+        private final long size;
+        private final long lastModified;
+        private final byte[] hash;
+
+        Fingerprint(long size, long lastModified, byte[] hash)
+        {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+    }
+}
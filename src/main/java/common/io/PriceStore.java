@@ -0,0 +1,285 @@
+package common.io;
+
+import models.PriceSeries;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Price histories of all currencies, kept outside of heap in memory-mapped file, which survives restarts.
+ * Series returned by store are views of read-only mapping, so showing history doesn't load it from DB into heap objects.
+ *
+ * File layout (big endian):
+ * header - magic number, version, number of currencies, reserved int;
+ * directory - one entry per currency: currency id (long), offset of its records, number of prices, capacity (ints) and reserved int;
+ * records - for each currency, packed (epoch day, price) records sorted by day, followed by free space for appended prices.
+ *
+ * Newer prices are appended in place, into free space of their currency. Everything else (new currency, older price, full space)
+ * only marks currency as stale, so its history is read from DB, until store is rewritten by {@link #rewrite(Map)}.
+ * Store is a copy of DB, so when file is missing or broken, store is empty and it's rebuilt on next synchronization.
+ *
+ * Mapped file can't be replaced or deleted on Windows, so each rewrite creates new file (prices-&lt;version&gt;.bin)
+ * in store directory and switches to it. Older files are deleted, when store is opened next time.
+ */
+public class PriceStore
+{
+    private static final Logger logger = Logger.getLogger(PriceStore.class);
+    private static final int MAGIC = 0x45524150;                                                                        // "ERAP"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int ENTRY_SIZE = 24;
+    private static final int MIN_FREE_RECORDS = 64;                                                                     // About three months of daily prices
+    private static final Pattern FILE_NAME = Pattern.compile("prices-(\\d+)\\.bin");
+
+    private final Path directory;
+    private Path file;                                                                                                  // Mapped file, null if store is empty
+    private long version;                                                                                               // The highest version of file in directory
+    private final Map<Long, Integer> entries = new HashMap<>();                                                         // K: currency id, V: position of its directory entry
+    private final Set<Long> stale = new HashSet<>();                                                                    // Currencies with prices missing in file
+    private FileChannel channel;
+    private MappedByteBuffer writeView;
+    private ByteBuffer readView;
+
+    private PriceStore(Path directory)
+    {
+        this.directory = directory;
+    }
+
+    /**
+     * Maps the newest valid store file from directory and deletes the other ones. Missing or broken files give empty store.
+     * @param directory directory of store files, files are created by rewrites
+     * @return opened store
+     */
+    public static PriceStore open(Path directory)
+    {
+        PriceStore store = new PriceStore(directory);
+        List<Path> files = new ArrayList<>();
+        if(Files.isDirectory(directory))
+        {
+            try(DirectoryStream<Path> stream = Files.newDirectoryStream(directory))
+            {
+                for(Path path : stream)
+                {
+                    if(FILE_NAME.matcher(path.getFileName().toString()).matches())
+                        files.add(path);
+                }
+            }
+            catch (IOException e)
+            {
+                logger.warn("Couldn't list price store " + directory + ", it will be rebuilt from DB.", e);
+            }
+        }
+        files.sort((a, b) -> Long.compare(versionOf(b), versionOf(a)));                                                 // Newest first
+        for(Path path : files)
+        {
+            store.version = Math.max(store.version, versionOf(path));
+            if(store.file != null)
+            {
+                delete(path);
+                continue;
+            }
+            try
+            {
+                store.file = path;
+                store.map();
+                logger.info("Mapped price store " + path + " with " + store.entries.size() + " currencies.");
+            }
+            catch (IOException | RuntimeException e)
+            {
+                logger.warn("Couldn't map price store " + path + ", it will be rebuilt from DB.", e);
+                store.unmap();
+                store.file = null;
+                delete(path);
+            }
+        }
+        return store;
+    }
+
+    /**
+     * @return prices of currency, mapped from store file, or null, if store doesn't have all its prices
+     */
+    public synchronized PriceSeries getSeries(Long currencyId)
+    {
+        Integer entry = entries.get(currencyId);
+        if(entry == null || stale.contains(currencyId))
+            return null;
+        ByteBuffer records = readView.duplicate();
+        int offset = writeView.getInt(entry + 8);
+        records.position(offset).limit(offset + writeView.getInt(entry + 12) * PriceSeries.RECORD_SIZE);
+        return PriceSeries.ofRecords(records);
+    }
+
+    /**
+     * @return number of currencies in store, including stale ones
+     */
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Appends new prices of currencies. Currencies, which prices can't be appended in place, are marked as stale.
+     * @param prices K: currency id, V: prices saved to DB
+     */
+    public synchronized void append(Map<Long, PriceSeries> prices)
+    {
+        prices.forEach((currencyId, series) -> {
+            if(!series.isEmpty() && !appendInPlace(currencyId, series))
+                stale.add(currencyId);
+        });
+    }
+
+    /**
+     * Writes new store file with provided histories and maps it instead of the old one. Old file stays mapped,
+     * so series mapped from it stay valid, it's deleted on next open.
+     * @param prices K: currency id, V: all its prices. Currencies, which aren't provided, are dropped.
+     */
+    public synchronized void rewrite(Map<Long, PriceSeries> prices) throws IOException
+    {
+        long start = System.currentTimeMillis();
+        long size = HEADER_SIZE + (long) prices.size() * ENTRY_SIZE;
+        for(PriceSeries series : prices.values())
+            size += (long) capacity(series.size()) * PriceSeries.RECORD_SIZE;
+        if(size > Integer.MAX_VALUE)
+            throw new IOException("Price store would exceed 2 GiB: " + size);
+
+        Files.createDirectories(directory);
+        Path next = directory.resolve("prices-" + ++version + ".bin");                                                  // Failed rewrite leaves its file behind, it isn't reused
+        try(FileChannel nextChannel = FileChannel.open(next, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            MappedByteBuffer buffer = nextChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(0).putInt(VERSION).putInt(prices.size()).putInt(0);
+            int offset = HEADER_SIZE + prices.size() * ENTRY_SIZE;
+            for(Map.Entry<Long, PriceSeries> currency : prices.entrySet())
+            {
+                PriceSeries series = currency.getValue();
+                int capacity = capacity(series.size());
+                buffer.putLong(currency.getKey()).putInt(offset).putInt(series.size()).putInt(capacity).putInt(0);
+                for(int i = 0; i < series.size(); i++)
+                    buffer.putInt(offset + i * PriceSeries.RECORD_SIZE, series.getDay(i)).putFloat(offset + i * PriceSeries.RECORD_SIZE + 4, series.getPrice(i));
+                offset += capacity * PriceSeries.RECORD_SIZE;
+            }
+            buffer.force();
+            buffer.putInt(0, MAGIC);                                                                                    // Magic is written last, so interrupted rewrite leaves invalid file
+            buffer.force();
+        }
+        unmap();
+        file = next;
+        map();
+        logger.info("Rewrote price store " + file + " with " + prices.size() + " currencies (" + size / 1024 + " KiB) in "
+                + (System.currentTimeMillis() - start) + " ms.");
+    }
+
+    /**
+     * Writes prices after the last stored one, if they are newer than it and free space of currency is big enough
+     * @return were prices appended? T/F
+     */
+    private boolean appendInPlace(Long currencyId, PriceSeries series)
+    {
+        Integer entry = entries.get(currencyId);
+        if(entry == null || stale.contains(currencyId))
+            return false;
+        int offset = writeView.getInt(entry + 8);
+        int count = writeView.getInt(entry + 12);
+        int capacity = writeView.getInt(entry + 16);
+        if(count + series.size() > capacity)
+            return false;
+        if(count > 0 && writeView.getInt(offset + (count - 1) * PriceSeries.RECORD_SIZE) >= series.getDay(0))
+            return false;
+        for(int i = 0; i < series.size(); i++)
+        {
+            int position = offset + (count + i) * PriceSeries.RECORD_SIZE;
+            writeView.putInt(position, series.getDay(i)).putFloat(position + 4, series.getPrice(i));
+        }
+        writeView.putInt(entry + 12, count + series.size());                                                            // Records are written first, so readers never see unwritten ones
+        return true;
+    }
+
+    private void map() throws IOException
+    {
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size();
+        if(size < HEADER_SIZE || size > Integer.MAX_VALUE)
+            throw new IOException("Invalid size of price store: " + size);
+        writeView = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        readView = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        if(writeView.getInt(0) != MAGIC || writeView.getInt(4) != VERSION)
+            throw new IOException("Unknown format of price store");
+        int currencies = writeView.getInt(8);
+        if(currencies < 0 || HEADER_SIZE + (long) currencies * ENTRY_SIZE > size)
+            throw new IOException("Invalid number of currencies in price store: " + currencies);
+        for(int i = 0; i < currencies; i++)
+        {
+            int entry = HEADER_SIZE + i * ENTRY_SIZE;
+            long end = writeView.getInt(entry + 8) + (long) writeView.getInt(entry + 16) * PriceSeries.RECORD_SIZE;
+            if(writeView.getInt(entry + 8) < 0 || writeView.getInt(entry + 12) > writeView.getInt(entry + 16) || end > size)
+                throw new IOException("Invalid directory entry " + i + " of price store");
+            entries.put(writeView.getLong(entry), entry);
+        }
+        stale.clear();
+    }
+
+    /**
+     * Forgets mapped file. Mapping itself is released by GC, when no series uses it anymore.
+     */
+    private void unmap()
+    {
+        entries.clear();
+        writeView = null;
+        readView = null;
+        if(channel != null)
+        {
+            try
+            {
+                channel.close();
+            }
+            catch (IOException e)
+            {
+                logger.warn("Couldn't close price store " + file, e);
+            }
+            channel = null;
+        }
+    }
+
+    private static long versionOf(Path file)
+    {
+        Matcher matcher = FILE_NAME.matcher(file.getFileName().toString());
+        return matcher.matches() ? Long.parseLong(matcher.group(1)) : 0;
+    }
+
+    private static void delete(Path file)
+    {
+        try
+        {
+            Files.deleteIfExists(file);
+        }
+        catch (IOException e)
+        {
+            logger.warn("Couldn't delete old price store " + file + ", it will be deleted on next start.", e);
+        }
+    }
+
+    /**
+     * @return number of records reserved for currency with provided number of prices
+     */
+    private static int capacity(int count)
+    {
+        return count + Math.max(MIN_FREE_RECORDS, count / 16);
+    }
+}
@@ -0,0 +1,247 @@
+package common.parsers;
+
+import common.utils.EpochDays;
+import models.csv.CSVArchive;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reader of archive files published by nbp.pl (archiwum_tab_a_yyyy.csv, archiwum_tab_b_yyyy.csv).
+ * File starts with two header lines (converter with currency code, currency name), followed by one line per publication
+ * and a footer, separated with empty line. Works with archive from any year.
+ *
+ * File is read into a single buffer and scanned byte by byte. Only header lines are decoded to strings,
+ * dates and prices are parsed straight from bytes into primitive arrays. File isn't memory mapped: mapping lives
+ * until it's garbage collected and on Windows it would stop downloader from replacing the file with newer one.
+ * Instances are stateless and may be shared between threads.
+ */
+public class ArchiveCsvParser
+{
+    private static final Charset CHARSET = Charset.forName("Windows-1250");
+    private static final byte DELIMITER = ';';
+    private static final double[] POWERS_OF_TEN = {1, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18};
+
+    /**
+     * @param archive archive file in .csv format, downloaded from nbp.pl
+     * @param tableName name of table, which archive contains (A or B)
+     * @return parsed archive
+     */
+    public CSVArchive parse(File archive, String tableName) throws IOException
+    {
+        return parse(ByteBuffer.wrap(Files.readAllBytes(archive.toPath())), tableName);
+    }
+
+    /**
+     * Parses archive from provided buffer, starting at its current position.
+     */
+    public CSVArchive parse(ByteBuffer buffer, String tableName)
+    {
+        Cursor cursor = new Cursor(buffer);
+
+        List<String> codes = new ArrayList<>();                                                                         // First line is a header containing converter and currency code
+        List<Double> converters = new ArrayList<>();
+        cursor.skipCell();
+        while(!cursor.atLineEnd())
+        {
+            int start = cursor.position;
+            int end = cursor.cellEnd();
+            int codeStart = start;
+            long converter = 0;
+            while(codeStart < end && isDigit(buffer.get(codeStart)))
+                converter = converter * 10 + (buffer.get(codeStart++) - '0');
+            if(codeStart == start || codeStart == end)                                                                  // Reached "nr tabeli" columns
+                break;
+            converters.add((double) converter);
+            codes.add(cursor.decode(codeStart, end, StandardCharsets.US_ASCII));
+            cursor.skipCell();
+        }
+        cursor.nextLine();
+
+        int columns = codes.size();
+        String[] names = new String[columns];                                                                           // Second line is a header containing currency name
+        cursor.skipCell();
+        for(int column = 0; column < columns && !cursor.atLineEnd(); column++)
+        {
+            names[column] = cursor.decode(cursor.position, cursor.cellEnd(), CHARSET).trim();
+            cursor.skipCell();
+        }
+        cursor.nextLine();
+
+        int capacity = 256;                                                                                             // Enough for one year of publications
+        int[] days = new int[capacity];
+        float[][] prices = new float[columns][capacity];
+        int rows = 0;
+        while(cursor.hasRemaining())
+        {
+            int day = cursor.parseDay();
+            if(day < 0)                                                                                                 // It means we reached document's footer
+                break;
+            if(rows == capacity)
+            {
+                capacity *= 2;
+                days = Arrays.copyOf(days, capacity);
+                for(int column = 0; column < columns; column++)
+                    prices[column] = Arrays.copyOf(prices[column], capacity);
+            }
+            days[rows] = day;
+            cursor.skipCell();
+            for(int column = 0; column < columns; column++)
+            {
+                prices[column][rows] = cursor.atLineEnd() ? Float.NaN : cursor.parsePrice();
+                cursor.skipCell();
+            }
+            cursor.nextLine();
+            rows++;
+        }
+
+        for(int column = 0; column < columns; column++)
+            prices[column] = Arrays.copyOf(prices[column], rows);
+        return new CSVArchive(tableName,
+                codes.toArray(new String[0]),
+                converters.stream().mapToDouble(Double::doubleValue).toArray(),
+                names,
+                Arrays.copyOf(days, rows),
+                prices);
+    }
+
+    private static boolean isDigit(byte b)
+    {
+        return b >= '0' && b <= '9';
+    }
+
+    /**
+     * Position in scanned buffer. Cells are delimited with ';', lines with '\n' (optionally preceded by '\r').
+     */
+    private static class Cursor
+    {
+        private final ByteBuffer buffer;
+        private final int limit;
+        private int position;
+
+        Cursor(ByteBuffer buffer)
+        {
+            this.buffer = buffer;
+            this.position = buffer.position();
+            this.limit = buffer.limit();
+        }
+
+        boolean hasRemaining()
+        {
+            return position < limit;
+        }
+
+        boolean atLineEnd()
+        {
+            return position >= limit || buffer.get(position) == '\n' || buffer.get(position) == '\r';
+        }
+
+        /**
+         * @return position right after last byte of current cell
+         */
+        int cellEnd()
+        {
+            int end = position;
+            while(end < limit)
+            {
+                byte b = buffer.get(end);
+                if(b == DELIMITER || b == '\n' || b == '\r')
+                    break;
+                end++;
+            }
+            return end;
+        }
+
+        /**
+         * Moves to the beginning of next cell in the same line, or to the end of line
+         */
+        void skipCell()
+        {
+            position = cellEnd();
+            if(position < limit && buffer.get(position) == DELIMITER)
+                position++;
+        }
+
+        void nextLine()
+        {
+            while(position < limit && buffer.get(position++) != '\n');
+        }
+
+        String decode(int start, int end, Charset charset)
+        {
+            if(end - start >= 2 && buffer.get(start) == '"' && buffer.get(end - 1) == '"')
+            {
+                start++;
+                end--;
+            }
+            byte[] bytes = new byte[end - start];
+            for(int i = 0; i < bytes.length; i++)
+                bytes[i] = buffer.get(start + i);
+            return new String(bytes, charset);
+        }
+
+        /**
+         * Parses date written as yyyyMMdd at current position
+         * @return epoch day or -1 if current cell isn't a date
+         */
+        int parseDay()
+        {
+            int end = cellEnd();
+            if(end - position != 8)
+                return -1;
+            int value = 0;
+            for(int i = position; i < end; i++)
+            {
+                byte b = buffer.get(i);
+                if(!isDigit(b))
+                    return -1;
+                value = value * 10 + (b - '0');
+            }
+            return EpochDays.of(value / 10000, value / 100 % 100, value % 100);
+        }
+
+        /**
+         * Parses price written with decimal comma (eg. 4,2106) at current position
+         * @return price or Float.NaN if cell is empty or isn't a number
+         */
+        float parsePrice()
+        {
+            int end = cellEnd();
+            int i = position;
+            while(i < end && buffer.get(i) == ' ')
+                i++;
+            boolean negative = i < end && buffer.get(i) == '-';
+            if(negative)
+                i++;
+            long mantissa = 0;
+            int scale = -1;                                                                                             // Number of digits after decimal separator, -1 until separator is found
+            int digits = 0;
+            for(; i < end; i++)
+            {
+                byte b = buffer.get(i);
+                if(isDigit(b))
+                {
+                    mantissa = mantissa * 10 + (b - '0');
+                    digits++;
+                    if(scale >= 0)
+                        scale++;
+                }
+                else if((b == ',' || b == '.') && scale < 0)
+                    scale = 0;
+                else if(b != ' ')
+                    return Float.NaN;
+            }
+            if(digits == 0 || digits >= POWERS_OF_TEN.length)
+                return Float.NaN;
+            double value = scale > 0 ? mantissa / POWERS_OF_TEN[scale] : mantissa;
+            return (float) (negative ? -value : value);
+        }
+    }
+}
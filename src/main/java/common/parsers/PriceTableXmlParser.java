@@ -0,0 +1,134 @@
+package common.parsers;
+
+import models.xml.XMLCurrency;
+import models.xml.XMLPriceTable;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Streaming (StAX) reader of tabela_kursow files published by nbp.pl (LastA.xml, LastB.xml, LastC.xml).
+ * Decodes positions straight into typed values, without building JAXB context or intermediate string beans.
+ * Instances are stateless and may be shared between threads.
+ */
+public class PriceTableXmlParser
+{
+    private static final XMLInputFactory factory = createFactory();                                                     // Factory is thread safe once configured, so it is created only once
+
+    private static XMLInputFactory createFactory()
+    {
+        XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return xmlInputFactory;
+    }
+
+    /**
+     * Parses whole file.
+     * @param file .xml file downloaded from nbp.pl
+     * @return parsed table
+     */
+    public XMLPriceTable parse(File file) throws IOException, XMLStreamException
+    {
+        return parse(file, null);
+    }
+
+    /**
+     * Parses file, unless its publication date is already known.
+     * Reading stops right after data_publikacji element if it matches knownPublicationDate.
+     * @param file .xml file downloaded from nbp.pl
+     * @param knownPublicationDate publication date of last stored table (yyyy-MM-dd), may be null
+     * @return parsed table or null, if file contains already stored publication
+     */
+    public XMLPriceTable parse(File file, String knownPublicationDate) throws IOException, XMLStreamException
+    {
+        try(InputStream inputStream = new BufferedInputStream(new FileInputStream(file)))
+        {
+            return parse(inputStream, knownPublicationDate);
+        }
+    }
+
+    /**
+     * Parses provided stream. Encoding is taken from xml declaration (ISO-8859-2 for nbp.pl files).
+     * Stream is not closed by this method.
+     */
+    public XMLPriceTable parse(InputStream inputStream, String knownPublicationDate) throws XMLStreamException
+    {
+        XMLStreamReader reader = factory.createXMLStreamReader(inputStream);
+        try
+        {
+            XMLPriceTable table = new XMLPriceTable();
+            XMLCurrency position = null;
+            while(reader.hasNext())
+            {
+                if(reader.next() != XMLStreamConstants.START_ELEMENT)
+                    continue;
+                switch(reader.getLocalName())
+                {
+                    case "tabela_kursow":
+                        table.setTableName(reader.getAttributeValue(null, "typ"));
+                        break;
+                    case "numer_tabeli":
+                        table.setTableNr(reader.getElementText().trim());
+                        break;
+                    case "data_publikacji":
+                        table.setPublicationDate(reader.getElementText().trim());
+                        if(table.getPublicationDate().equals(knownPublicationDate))                                     // Nothing new in this file, there is no need to read positions
+                            return null;
+                        break;
+                    case "pozycja":
+                        position = new XMLCurrency();
+                        table.getCurrencies().add(position);
+                        break;
+                    case "nazwa_waluty":
+                        if(position != null)
+                            position.setName(reader.getElementText().trim());
+                        break;
+                    case "przelicznik":
+                        if(position != null)
+                            position.setConverter(Double.parseDouble(reader.getElementText().trim()));
+                        break;
+                    case "kod_waluty":
+                        if(position != null)
+                            position.setCurrencyCode(reader.getElementText().trim());
+                        break;
+                    case "kurs_sredni":
+                        if(position != null)
+                            position.setAvgPrice(parsePrice(reader.getElementText()));
+                        break;
+                    case "kurs_kupna":
+                        if(position != null)
+                            position.setBidPrice(parsePrice(reader.getElementText()));
+                        break;
+                    case "kurs_sprzedazy":
+                        if(position != null)
+                            position.setAskPrice(parsePrice(reader.getElementText()));
+                        break;
+                    default:
+                        break;
+                }
+            }
+            return table;
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    /**
+     * Parses price written with decimal comma (eg. 4,2106)
+     */
+    static Float parsePrice(String text)
+    {
+        return Float.parseFloat(text.trim().replace(',', '.'));
+    }
+}
@@ -0,0 +1,70 @@
+package common.pipeline;
+
+/**
+ * Snapshot of counters of single pipeline stage
+ */
+public class StageStatistics
+{
+    private final String name;
+    private final int threads;
+    private final int queueDepth;
+    private final int queueCapacity;
+    private final long processed;
+    private final long failed;
+    private final long discarded;                                                                                       // Items, that came after all workers of stage died
+    private final long elapsedNanos;
+
+    StageStatistics(String name, int threads, int queueDepth, int queueCapacity, long processed, long failed, long discarded, long elapsedNanos)
+    {
+        this.name = name;
+        this.threads = threads;
+        this.queueDepth = queueDepth;
+        this.queueCapacity = queueCapacity;
+        this.processed = processed;
+        this.failed = failed;
+        this.discarded = discarded;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public long getProcessed() {
+        return processed;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public long getDiscarded() {
+        return discarded;
+    }
+
+    /**
+     * @return processed items per second, since stage was started
+     */
+    public double getThroughput() {
+        return elapsedNanos > 0 ? processed * 1e9 / elapsedNanos : 0;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s[threads=%d, queue=%d/%d, processed=%d, failed=%d, discarded=%d, %.2f/s]",
+                name, threads, queueDepth, queueCapacity, processed, failed, discarded, getThroughput());
+    }
+}
@@ -0,0 +1,269 @@
+package common.pipeline;
+
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Chain of stages connected with bounded queues. Each stage has its own worker threads, so stages work simultaneously
+ * (eg. next file is downloaded while previous one is parsed and the one before is saved to DB).
+ * When queue of a stage is full, previous stage waits (backpressure), so fast stages can't flood slow ones.
+ *
+ * Stage may drop an item by returning null. Exception thrown while processing an item is logged and counted,
+ * the item is dropped and the stage continues with next one. When worker thread dies (Error or interruption),
+ * next stage is still closed, so {@link #finish()} doesn't wait forever. When all workers of a stage died,
+ * items waiting in its queue and items passed to it later are discarded (and counted), so previous stages don't block on it.
+ *
+ * Usage: StagedPipeline.first(...).then(...).end(...), then submit items and call finish().
+ * @param <I> type of items accepted by first stage
+ */
+public class StagedPipeline<I>
+{
+    private static final Logger logger = Logger.getLogger(StagedPipeline.class);
+    private static final Object END = new Object();                                                                     // Marks end of items in queue, one per worker thread
+    private static final long CLOSED_CHECK_MILLIS = 100;                                                                // How often blocked producer checks, if stage still has workers
+
+    private final List<Stage<?, ?>> stages;
+
+    private StagedPipeline(List<Stage<?, ?>> stages)
+    {
+        this.stages = stages;
+        stages.forEach(Stage::start);
+    }
+
+    /**
+     * Creates first stage of pipeline
+     * @param name stage name, used in statistics and thread names
+     * @param threads number of worker threads
+     * @param capacity maximum number of items waiting in stage's queue
+     * @param work transformation of single item, may return null to drop item
+     */
+    public static <I, O> Builder<I, O> first(String name, int threads, int capacity, Function<I, O> work)
+    {
+        return new Builder<>(new Stage<>(name, threads, capacity, work));
+    }
+
+    /**
+     * Passes item to first stage. Blocks while queue of first stage is full. Item is discarded, if first stage has no workers left.
+     */
+    public void submit(I item) throws InterruptedException
+    {
+        stages.get(0).put(item);
+    }
+
+    /**
+     * Marks, that no more items will be submitted and waits until all stages process remaining items.
+     */
+    public void finish() throws InterruptedException
+    {
+        stages.get(0).end();
+        for(Stage<?, ?> stage : stages)
+            stage.done.await();
+    }
+
+    /**
+     * @return current statistics of each stage, in pipeline order
+     */
+    public List<StageStatistics> getStatistics()
+    {
+        return stages.stream().map(Stage::getStatistics).collect(Collectors.toList());
+    }
+
+    public static class Builder<I, O>
+    {
+        private final List<Stage<?, ?>> stages = new ArrayList<>();
+        private Stage<?, O> last;
+
+        private Builder(Stage<I, O> first)
+        {
+            stages.add(first);
+            last = first;
+        }
+
+        /**
+         * Adds next stage, which receives results of previous one
+         * @see StagedPipeline#first(String, int, int, Function)
+         */
+        @SuppressWarnings("unchecked")
+        public <P> Builder<I, P> then(String name, int threads, int capacity, Function<O, P> work)
+        {
+            Stage<O, P> stage = new Stage<>(name, threads, capacity, work);
+            last.next = stage;
+            stages.add(stage);
+            Builder<I, P> builder = (Builder<I, P>) (Builder<I, ?>) this;
+            builder.last = stage;
+            return builder;
+        }
+
+        /**
+         * Adds last stage, which consumes results of previous one, and starts all stages
+         * @see StagedPipeline#first(String, int, int, Function)
+         */
+        public StagedPipeline<I> end(String name, int threads, int capacity, Consumer<O> sink)
+        {
+            Stage<O, Void> stage = new Stage<>(name, threads, capacity, item -> {
+                sink.accept(item);
+                return null;
+            });
+            last.next = stage;
+            stages.add(stage);
+            return new StagedPipeline<>(stages);
+        }
+    }
+
+    /**
+     * Single stage with its queue and worker threads
+     */
+    private static class Stage<I, O>
+    {
+        private final String name;
+        private final int threads;
+        private final int capacity;
+        private final BlockingQueue<Object> queue;
+        private final Function<I, O> work;
+        private Stage<O, ?> next;
+
+        private final AtomicInteger running;
+        private final CountDownLatch done;
+        private final AtomicLong processed = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong discarded = new AtomicLong();
+        private volatile boolean closed;                                                                                // All workers exited, nobody takes items from queue
+        private long startTime;
+
+        Stage(String name, int threads, int capacity, Function<I, O> work)
+        {
+            this.name = name;
+            this.threads = threads;
+            this.capacity = capacity;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.work = work;
+            this.running = new AtomicInteger(threads);
+            this.done = new CountDownLatch(threads);
+        }
+
+        void start()
+        {
+            startTime = System.nanoTime();
+            for(int i = 0; i < threads; i++)
+            {
+                Thread thread = new Thread(this::run, "pipeline-" + name + "-" + i);
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+
+        /**
+         * Puts item into queue, waits while queue is full. Item is discarded, when stage is closed.
+         */
+        void put(Object item) throws InterruptedException
+        {
+            while(!closed)
+            {
+                if(queue.offer(item, CLOSED_CHECK_MILLIS, TimeUnit.MILLISECONDS))
+                {
+                    if(closed)                                                                                          // Last worker exited meanwhile, nobody will take it
+                        drain();
+                    return;
+                }
+            }
+            if(item != END)
+                discarded.incrementAndGet();
+        }
+
+        /**
+         * Puts end markers for all worker threads. Interruption doesn't stop it, it's restored afterwards.
+         */
+        void end()
+        {
+            boolean interrupted = false;
+            for(int i = 0; i < threads; i++)
+            {
+                while(true)
+                {
+                    try
+                    {
+                        put(END);
+                        break;
+                    }
+                    catch (InterruptedException e)
+                    {
+                        interrupted = true;
+                    }
+                }
+            }
+            if(interrupted)
+                Thread.currentThread().interrupt();
+        }
+
+        /**
+         * Discards all items waiting in queue
+         */
+        private void drain()
+        {
+            Object item;
+            while((item = queue.poll()) != null)
+            {
+                if(item != END)
+                    discarded.incrementAndGet();
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void run()
+        {
+            try
+            {
+                Object item;
+                while((item = queue.take()) != END)
+                {
+                    O result;
+                    try
+                    {
+                        result = work.apply((I) item);
+                        processed.incrementAndGet();
+                    }
+                    catch (RuntimeException e)
+                    {
+                        failed.incrementAndGet();
+                        logger.error("Error in pipeline stage " + name + ", item dropped.", e);
+                        continue;
+                    }
+                    if(result != null && next != null)
+                        next.put(result);
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            finally
+            {
+                if(running.decrementAndGet() == 0)
+                {
+                    closed = true;
+                    drain();                                                                                            // Releases previous stage, if it waits for free space
+                    if(next != null)                                                                                    // Last worker of this stage closes the next one
+                        next.end();
+                }
+                done.countDown();
+            }
+        }
+
+        StageStatistics getStatistics()
+        {
+            return new StageStatistics(name, threads, queue.size(), capacity, processed.get(), failed.get(), discarded.get(),
+                    System.nanoTime() - startTime);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package common.repository;
+
+import common.utils.EpochDays;
+import models.CurrencyPrice;
+import org.apache.log4j.Logger;
+import org.hibernate.Session;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+import javax.persistence.EntityManager;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Saves large amounts of prices (eg. whole archive) at once, in transaction of provided EntityManager.
+ * Prices are collected with {@link #add(Long, CurrencyPrice)} and written by {@link #flush()}:
+ * on PostgreSQL they are streamed with COPY, on other databases they are sent as JDBC batches of plain inserts.
+ * Both bypass Hibernate, so identity generated ids don't force a round trip per price.
+ */
+public class BulkPriceLoader
+{
+    private static final Logger logger = Logger.getLogger(BulkPriceLoader.class);
+    private static final String COPY_SQL = "COPY price (currency_id, date, price, bid_price, ask_price) FROM STDIN";
+    private static final String INSERT_SQL = "INSERT INTO price (currency_id, date, price, bid_price, ask_price) VALUES (?, ?, ?, ?, ?)";
+    private static final int COPY_CHUNK_SIZE = 64 * 1024;                                                               // Characters sent to DB in single COPY message
+    private static final int BATCH_SIZE = 1000;
+
+    private final Session session;
+    private final List<Long> currencyIds = new ArrayList<>();
+    private final List<CurrencyPrice> prices = new ArrayList<>();
+
+    public BulkPriceLoader(EntityManager em)
+    {
+        this.session = em.unwrap(Session.class);
+    }
+
+    /**
+     * Queues price to be saved on next flush
+     * @param currencyId id of stored currency, that price belongs to
+     */
+    public void add(Long currencyId, CurrencyPrice price)
+    {
+        currencyIds.add(currencyId);
+        prices.add(price);
+    }
+
+    /**
+     * Saves all queued prices. Transaction is neither committed, nor rolled back.
+     * @return number of saved prices
+     */
+    public int flush()
+    {
+        if(prices.isEmpty())
+            return 0;
+        int count = prices.size();
+        long start = System.nanoTime();
+        try
+        {
+            session.doWork(connection -> {
+                if(connection.isWrapperFor(PGConnection.class))
+                    copy(connection.unwrap(PGConnection.class));
+                else
+                    insertBatches(connection);
+            });
+        }
+        finally
+        {
+            clear();
+        }
+        logger.debug("Saved " + count + " prices in " + (System.nanoTime() - start) / 1000000 + " ms.");
+        return count;
+    }
+
+    /**
+     * Drops queued prices without saving them
+     */
+    public void clear()
+    {
+        currencyIds.clear();
+        prices.clear();
+    }
+
+    /**
+     * Streams prices in COPY text format: tab separated columns, \N for null
+     */
+    private void copy(PGConnection connection) throws SQLException
+    {
+        CopyIn copyIn = connection.getCopyAPI().copyIn(COPY_SQL);
+        try
+        {
+            StringBuilder buffer = new StringBuilder(COPY_CHUNK_SIZE + 128);
+            for(int i = 0; i < prices.size(); i++)
+            {
+                CurrencyPrice price = prices.get(i);
+                buffer.append(currencyIds.get(i)).append('\t').append(EpochDays.format(price.getDay()));
+                buffer.append('\t').append(price.getPrice());
+                appendNullable(buffer.append('\t'), price.getBidPrice());
+                appendNullable(buffer.append('\t'), price.getAskPrice());
+                buffer.append('\n');
+                if(buffer.length() >= COPY_CHUNK_SIZE)
+                {
+                    write(copyIn, buffer);
+                    buffer.setLength(0);
+                }
+            }
+            write(copyIn, buffer);
+            copyIn.endCopy();
+        }
+        finally
+        {
+            if(copyIn.isActive())
+                copyIn.cancelCopy();
+        }
+    }
+
+    private static void appendNullable(StringBuilder buffer, Float value)
+    {
+        if(value == null)
+            buffer.append("\\N");
+        else
+            buffer.append(value);
+    }
+
+    private static void write(CopyIn copyIn, StringBuilder buffer) throws SQLException
+    {
+        byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+        copyIn.writeToCopy(bytes, 0, bytes.length);
+    }
+
+    private void insertBatches(Connection connection) throws SQLException
+    {
+        try(PreparedStatement statement = connection.prepareStatement(INSERT_SQL))
+        {
+            for(int i = 0; i < prices.size(); i++)
+            {
+                CurrencyPrice price = prices.get(i);
+                statement.setLong(1, currencyIds.get(i));
+                statement.setDate(2, EpochDays.toSqlDate(price.getDay()));
+                statement.setFloat(3, price.getPrice());
+                setNullable(statement, 4, price.getBidPrice());
+                setNullable(statement, 5, price.getAskPrice());
+                statement.addBatch();
+                if((i + 1) % BATCH_SIZE == 0)
+                    statement.executeBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    private static void setNullable(PreparedStatement statement, int index, Float value) throws SQLException
+    {
+        if(value == null)
+            statement.setNull(index, Types.REAL);
+        else
+            statement.setFloat(index, value);
+    }
+}
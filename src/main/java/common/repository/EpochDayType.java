@@ -0,0 +1,83 @@
+package common.repository;
+
+import common.utils.EpochDays;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.usertype.UserType;
+
+import java.io.Serializable;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Objects;
+
+/**
+ * Hibernate type of day kept as int epoch day in objects and as DATE in DB (eg. date of price).
+ * Days are compared and hashed as primitives, without creating date objects for each of them.
+ */
+public class EpochDayType implements UserType
+{
+    private static final int[] SQL_TYPES = {Types.DATE};
+
+    @Override
+    public int[] sqlTypes() {
+        return SQL_TYPES;
+    }
+
+    @Override
+    public Class<?> returnedClass() {
+        return Integer.class;
+    }
+
+    @Override
+    public boolean equals(Object x, Object y) {
+        return Objects.equals(x, y);
+    }
+
+    @Override
+    public int hashCode(Object x) {
+        return Objects.hashCode(x);
+    }
+
+    @Override
+    public Object nullSafeGet(ResultSet rs, String[] names, SharedSessionContractImplementor session, Object owner) throws SQLException
+    {
+        Date date = rs.getDate(names[0]);
+        return date == null ? null : EpochDays.fromSqlDate(date);
+    }
+
+    @Override
+    public void nullSafeSet(PreparedStatement st, Object value, int index, SharedSessionContractImplementor session) throws SQLException
+    {
+        if(value == null)
+            st.setNull(index, Types.DATE);
+        else
+            st.setDate(index, EpochDays.toSqlDate((Integer) value));
+    }
+
+    @Override
+    public Object deepCopy(Object value) {
+        return value;
+    }
+
+    @Override
+    public boolean isMutable() {
+        return false;
+    }
+
+    @Override
+    public Serializable disassemble(Object value) {
+        return (Serializable) value;
+    }
+
+    @Override
+    public Object assemble(Serializable cached, Object owner) {
+        return cached;
+    }
+
+    @Override
+    public Object replace(Object original, Object target, Object owner) {
+        return original;
+    }
+}
@@ -3,18 +3,26 @@ package common.repository;
 import com.google.common.collect.ImmutableMap;
 import common.models.AbstractModel;
 import org.hibernate.Criteria;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
+import org.hibernate.StatelessSession;
 import org.hibernate.criterion.*;
+import org.hibernate.query.Query;
 import org.hibernate.sql.JoinType;
 
 import javax.persistence.EntityManager;
-import javax.persistence.EntityManagerFactory;
-import javax.persistence.Persistence;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class HibernateRepository<T extends AbstractModel> implements Repository<T> {
 
@@ -50,13 +58,10 @@ public class HibernateRepository<T extends AbstractModel> implements Repository<
         }
     }
 
-    private synchronized EntityManager checkEM()                                                                        // Przed każdą transakcją z EM należy go ustawić, gdyż wraca automatycznie do wartości domyślnej
+    private EntityManager checkEM()                                                                                     // Przed każdą transakcją z EM należy go ustawić, repozytorium nie tworzy własnego
     {
         if(em == null)
-        {
-            EntityManagerFactory emf = Persistence.createEntityManagerFactory("defaultPersistenceUnit");
-            em = emf.createEntityManager();
-        }
+            throw new IllegalStateException("EntityManager of " + type.getSimpleName() + " repository isn't set.");
         return em;
     }
 
@@ -87,6 +92,106 @@ public class HibernateRepository<T extends AbstractModel> implements Repository<
         return criteria.list();
     }
 
+    @Override
+    public Stream<T> stream(Map<String, ?> restrictions, int fetchSize, String... aliases) {
+        return stream(restrictions, null, fetchSize, aliases);
+    }
+
+    @Override
+    public Stream<T> stream(Map<String, ?> restrictions, Order order, int fetchSize, String... aliases) {
+        StatelessSession session = getSession().getSessionFactory().openStatelessSession();
+        try
+        {
+            session.beginTransaction();                                                                                 // PostgreSQL driver fetches in parts only outside of autocommit
+            Query<T> query = session.createQuery(streamQuery(restrictions, order, aliases), type);
+            int parameter = 0;
+            for(Object value : restrictions.values())
+                query.setParameter("p" + parameter++, value);
+            query.setFetchSize(fetchSize);
+            ScrollableResults results = query.scroll(ScrollMode.FORWARD_ONLY);
+            Spliterator<T> rows = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL)
+            {
+                @Override
+                public boolean tryAdvance(Consumer<? super T> action)
+                {
+                    if(!results.next())
+                        return false;
+                    action.accept(type.cast(results.get(0)));
+                    return true;
+                }
+            };
+            return StreamSupport.stream(rows, false).onClose(() -> {
+                try
+                {
+                    results.close();
+                }
+                finally
+                {
+                    closeStatelessSession(session);
+                }
+            });
+        }
+        catch (RuntimeException e)
+        {
+            closeStatelessSession(session);
+            throw e;
+        }
+    }
+
+    /**
+     * Builds HQL query of stream. Aliases are joined like in criteria queries (LEFT OUTER JOIN, "a.b" joins b of alias a),
+     * restricted and ordered properties, which don't start with an alias, belong to root object.
+     * Restrictions are bound as parameters p0, p1... in order of map.
+     */
+    private String streamQuery(Map<String, ?> restrictions, Order order, String... aliases)
+    {
+        Set<String> names = new HashSet<>();
+        StringBuilder hql = new StringBuilder("select root from ").append(type.getName()).append(" root");
+        for(String alias : aliases)
+        {
+            String name = alias.contains(".") ? alias.split("\\.")[1] : alias;
+            hql.append(" left join ").append(alias.contains(".") ? alias : "root." + alias).append(' ').append(name);
+            names.add(name);
+        }
+        int parameter = 0;
+        for(String property : restrictions.keySet())
+            hql.append(parameter == 0 ? " where " : " and ").append(path(property, names)).append(" = :p").append(parameter++);
+        if(order != null)
+            hql.append(" order by ").append(path(order.getPropertyName(), names)).append(order.isAscending() ? " asc" : " desc");
+        return hql.toString();
+    }
+
+    private static String path(String property, Set<String> aliases)
+    {
+        return property.contains(".") && aliases.contains(property.split("\\.")[0]) ? property : "root." + property;
+    }
+
+    @Override
+    public long scroll(Map<String, ?> restrictions, Order order, int fetchSize, Consumer<? super T> consumer, String... aliases) {
+        long[] count = {0};
+        try(Stream<T> stream = stream(restrictions, order, fetchSize, aliases))
+        {
+            stream.forEach(object -> {
+                consumer.accept(object);
+                count[0]++;
+            });
+        }
+        return count[0];
+    }
+
+    private static void closeStatelessSession(StatelessSession session)
+    {
+        try
+        {
+            if(session.getTransaction().isActive())
+                session.getTransaction().rollback();                                                                    // Nothing is written, transaction only keeps cursor open
+        }
+        finally
+        {
+            session.close();
+        }
+    }
+
     @Override
     public List<T> findWithRestrictions(List<?> restrictions, String... aliases) {
         Map<String, JoinType> map = new HashMap<>();
@@ -329,7 +434,7 @@ public class HibernateRepository<T extends AbstractModel> implements Repository<
         });
     }
 
-    public synchronized void setEm(EntityManager em) {
+    public void setEm(EntityManager em) {
         this.em = em;
     }
 }
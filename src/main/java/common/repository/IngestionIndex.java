@@ -0,0 +1,210 @@
+package common.repository;
+
+import org.apache.log4j.Logger;
+
+import javax.persistence.EntityManager;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lightweight, ingestion-side view of stored data: ids of tables and currencies, their converters
+ * and days, for which prices are already stored. It is loaded with narrow projection queries,
+ * so ingestion never loads entities with their whole price history.
+ *
+ * Ingestion asks it before adding a price, so processing the same publication again, overlapping archives
+ * or restart after partially saved run never create duplicates. Unique constraint on price(currency_id, date)
+ * (see {@link SchemaMigrations}) guards DB in case index gets out of date.
+ *
+ * Entries are loaded lazily and kept between runs. For each currency only its last stored day is loaded at first,
+ * all stored days are loaded only when price older than that is added (eg. by backfill).
+ * Entry of single table is used by one thread at a time, after failed transaction it has to be dropped with {@link #invalidate(String)}.
+ */
+public class IngestionIndex
+{
+    private static final Logger logger = Logger.getLogger(IngestionIndex.class);
+
+    private final Map<String, TableEntry> tables = new ConcurrentHashMap<>();                                           // K: tableName, V: stored ids and days of table and its currencies
+
+    /**
+     * Gets entry of table, loading it from DB if it isn't known yet
+     * @param em Entity Manager used while loading entry
+     * @return entry of table, with null id if table isn't stored yet
+     */
+    public TableEntry getTable(EntityManager em, String tableName)
+    {
+        TableEntry entry = tables.get(tableName);
+        if(entry == null)
+        {
+            entry = load(em, tableName);
+            TableEntry previous = tables.putIfAbsent(tableName, entry);
+            if(previous != null)
+                entry = previous;
+        }
+        return entry;
+    }
+
+    /**
+     * Drops entry of table, eg. after its transaction was rolled back. Entry is loaded again on next use.
+     */
+    public void invalidate(String tableName)
+    {
+        tables.remove(tableName);
+    }
+
+    /**
+     * Drops all entries
+     */
+    public void clear()
+    {
+        tables.clear();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static TableEntry load(EntityManager em, String tableName)
+    {
+        TableEntry entry = new TableEntry(tableName);
+        List<Object[]> tableRows = NamedQueries.timed(NamedQueries.TABLE_BY_NAME, () -> em.createNamedQuery(NamedQueries.TABLE_BY_NAME)
+                .setParameter("tableName", tableName)
+                .getResultList());
+        if(tableRows.isEmpty())
+            return entry;
+        entry.id = (Long) tableRows.get(0)[0];
+        entry.publicationDate = (String) tableRows.get(0)[1];
+
+        List<Object[]> currencyRows = NamedQueries.timed(NamedQueries.CURRENCIES_OF_TABLE, () -> em.createNamedQuery(NamedQueries.CURRENCIES_OF_TABLE)
+                .setParameter("tableId", entry.id)
+                .getResultList());
+        currencyRows.forEach(row -> {
+            CurrencyEntry currency = new CurrencyEntry((Long) row[0], (Double) row[2]);
+            currency.lastDay = row[3] == null ? -1 : (Integer) row[3];
+            entry.currencies.put((String) row[1], currency);
+        });
+        logger.info("Loaded " + currencyRows.size() + " currencies of table " + tableName + " to ingestion index.");
+        return entry;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static BitSet loadDays(EntityManager em, Long currencyId)
+    {
+        List<Integer> dates = NamedQueries.timed(NamedQueries.PRICE_DAYS, () -> em.createNamedQuery(NamedQueries.PRICE_DAYS)
+                .setParameter("currencyId", currencyId)
+                .getResultList());
+        BitSet days = new BitSet();
+        dates.forEach(days::set);
+        return days;
+    }
+
+    /**
+     * Stored table and its currencies
+     */
+    public static class TableEntry
+    {
+        private final String tableName;
+        private Long id;
+        private String publicationDate;
+        private final Map<String, CurrencyEntry> currencies = new HashMap<>();                                         // K: currency code
+
+        private TableEntry(String tableName)
+        {
+            this.tableName = tableName;
+        }
+
+        public String getTableName() {
+            return tableName;
+        }
+
+        /**
+         * @return id of table, null if it isn't stored yet
+         */
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(Long id) {
+            this.id = id;
+        }
+
+        public String getPublicationDate() {
+            return publicationDate;
+        }
+
+        public void setPublicationDate(String publicationDate) {
+            this.publicationDate = publicationDate;
+        }
+
+        /**
+         * @return stored currency or null, if table doesn't contain currency with this code
+         */
+        public CurrencyEntry getCurrency(String currencyCode)
+        {
+            return currencies.get(currencyCode);
+        }
+
+        /**
+         * Registers newly stored currency of this table
+         */
+        public CurrencyEntry addCurrency(String currencyCode, Long id, Double converter)
+        {
+            CurrencyEntry currency = new CurrencyEntry(id, converter);
+            currencies.put(currencyCode, currency);
+            return currency;
+        }
+    }
+
+    /**
+     * Stored currency with days of its stored prices
+     */
+    public static class CurrencyEntry
+    {
+        private final Long id;
+        private final Double converter;
+        private int lastDay = -1;                                                                                       // Last day with stored price, -1 if there are none
+        private BitSet days;                                                                                            // All days with stored price, loaded only when needed
+
+        private CurrencyEntry(Long id, Double converter)
+        {
+            this.id = id;
+            this.converter = converter;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        /**
+         * @return converter (number of units), that stored prices are given for
+         */
+        public Double getConverter() {
+            return converter;
+        }
+
+        /**
+         * Marks day as stored. Checking days after last stored one costs nothing,
+         * older days are checked against all stored days, which are loaded on first such check.
+         * @param em Entity Manager used while loading stored days
+         * @return false if price for that day was already stored, true otherwise
+         */
+        public boolean addDay(EntityManager em, int epochDay)
+        {
+            if(epochDay > lastDay && days == null)
+            {
+                lastDay = epochDay;
+                return true;
+            }
+            if(days == null)
+            {
+                days = loadDays(em, id);
+                if(lastDay > -1)
+                    days.set(lastDay);                                                                                  // Last day may be added in current, not yet committed transaction
+            }
+            if(days.get(epochDay))
+                return false;
+            days.set(epochDay);
+            lastDay = Math.max(lastDay, epochDay);
+            return true;
+        }
+    }
+}
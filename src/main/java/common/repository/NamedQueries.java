@@ -0,0 +1,86 @@
+package common.repository;
+
+import org.apache.log4j.Logger;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Names of queries executed on hot paths (chart data, ingestion index, startup checks).
+ * Queries are defined in hibernate mapping files, so they are parsed and checked once, when persistence unit starts,
+ * and each execution sends the same SQL, which driver keeps prepared on server side (see connection url in persistence.xml).
+ *
+ * Executions wrapped in {@link #timed(String, Supplier)} are timed: each one is logged on DEBUG level
+ * and totals per query are logged with {@link #logStatistics()}.
+ */
+public final class NamedQueries
+{
+    public static final String TABLE_COUNT = "PriceTable.count";
+    public static final String TABLE_BY_NAME = "PriceTable.byName";
+    public static final String CURRENCIES_OF_TABLE = "Currency.ofTable";
+    public static final String LATEST_PRICES = "Currency.latestPrices";
+    public static final String PRICES_IN_RANGE = "CurrencyPrice.inRange";
+    public static final String PRICE_DAYS = "CurrencyPrice.daysOfCurrency";
+    public static final String PRICE_SERIES = "PriceSeries.ofCurrency";
+    public static final String PRICE_COUNTS = "PriceSeries.countsOfCurrencies";
+    public static final String ROLLUPS_IN_RANGE = "PriceRollup.inRange";
+
+    private static final Logger logger = Logger.getLogger(NamedQueries.class);
+    private static final Map<String, Timing> timings = new ConcurrentHashMap<>();                                      // K: query name
+
+    private NamedQueries(){}
+
+    /**
+     * Executes query and records its time
+     * @param queryName name of executed query
+     * @param execution creates, executes query and reads its result
+     * @return result of query
+     */
+    public static <T> T timed(String queryName, Supplier<T> execution)
+    {
+        long start = System.nanoTime();
+        try
+        {
+            return execution.get();
+        }
+        finally
+        {
+            long nanos = System.nanoTime() - start;
+            timings.computeIfAbsent(queryName, name -> new Timing()).add(nanos);
+            if(logger.isDebugEnabled())
+                logger.debug(String.format("Query %s executed in %.2f ms.", queryName, nanos / 1e6));
+        }
+    }
+
+    /**
+     * Logs number of executions, average and maximum time of each timed query
+     */
+    public static void logStatistics()
+    {
+        timings.forEach((name, timing) -> logger.info(name + ": " + timing));
+    }
+
+    /**
+     * Execution times of single query
+     */
+    private static class Timing
+    {
+        private long count;
+        private long totalNanos;
+        private long maxNanos;
+
+        synchronized void add(long nanos)
+        {
+            count++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+
+        @Override
+        public synchronized String toString()
+        {
+            return String.format("executions=%d, avg=%.2f ms, max=%.2f ms", count, count > 0 ? totalNanos / 1e6 / count : 0, maxNanos / 1e6);
+        }
+    }
+}
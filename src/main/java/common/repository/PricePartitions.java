@@ -0,0 +1,169 @@
+package common.repository;
+
+import org.apache.log4j.Logger;
+import org.joda.time.DateTime;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Optional layout of price table, partitioned by year (PostgreSQL 11+ declarative partitioning).
+ * Enabled with era.price.partitioned property in persistence.xml. On first start with property enabled,
+ * existing price table is converted by schema migration ({@link SchemaMigrations}): its rows are moved
+ * to partitioned table with one partition per year.
+ *
+ * Partitions are created as needed, before prices for new year are saved ({@link #ensureYears(EntityManager, int, int)}),
+ * there is no default partition. Queries, which restrict price date with a range (eg. chart ranges), let the planner
+ * read only partitions of requested years.
+ */
+public final class PricePartitions
+{
+    public static final String ENABLED_PROPERTY = "era.price.partitioned";
+
+    private static final Logger logger = Logger.getLogger(PricePartitions.class);
+    private static final Set<Integer> years = new HashSet<>();                                                          // Years with existing partitions
+    private static boolean enabled;
+
+    private PricePartitions(){}
+
+    /**
+     * Finds existing partitions and creates partitions for current and next year. Has to be called after schema migrations,
+     * which convert price table to partitioned one. Does nothing, unless partitioning is enabled in persistence unit.
+     * @param emf factory of Entity Manager, which persistence unit properties are checked
+     * @param em Entity Manager used while connecting with DB
+     */
+    public static synchronized void init(EntityManagerFactory emf, EntityManager em)
+    {
+        enabled = isEnabled(emf);
+        if(!enabled)
+            return;
+        try
+        {
+            em.getTransaction().begin();
+            if(!isPartitioned(em))
+                throw new IllegalStateException("Price table wasn't converted to partitioned one, see schema migrations");
+            @SuppressWarnings("unchecked")
+            List<String> partitions = em.createNativeQuery("SELECT CAST(c.relname AS VARCHAR) FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+                    "WHERE i.inhparent = CAST('price' AS regclass)").getResultList();
+            partitions.forEach(partition -> years.add(Integer.parseInt(partition.substring("price_y".length()))));
+            em.getTransaction().commit();
+            int year = DateTime.now().getYear();
+            ensureYears(em, year, year + 1);
+        }
+        catch (RuntimeException e)
+        {
+            if(em.getTransaction().isActive())
+                em.getTransaction().rollback();
+            enabled = false;
+            logger.error("Couldn't partition price table, it is used without partitions!", e);
+        }
+    }
+
+    /**
+     * @return is partitioning enabled in persistence unit? T/F
+     */
+    static boolean isEnabled(EntityManagerFactory emf)
+    {
+        return Boolean.parseBoolean(String.valueOf(emf.getProperties().get(ENABLED_PROPERTY)));
+    }
+
+    /**
+     * @return is price table partitioned already? T/F
+     */
+    static boolean isPartitioned(EntityManager em)
+    {
+        String kind = (String) em.createNativeQuery("SELECT CAST(relkind AS VARCHAR) FROM pg_class WHERE oid = CAST('price' AS regclass)").getSingleResult();
+        return "p".equals(kind);
+    }
+
+    /**
+     * Creates partitions for provided years, that don't have them yet. Has to be called before prices
+     * from these years are saved, outside of transaction, that saves them (partitions are created in their own transaction).
+     * Does nothing if partitioning is disabled.
+     * @param em Entity Manager used while connecting with DB
+     */
+    public static synchronized void ensureYears(EntityManager em, int fromYear, int toYear)
+    {
+        if(!enabled)
+            return;
+        Set<Integer> created = new HashSet<>();
+        try
+        {
+            em.getTransaction().begin();
+            for(int year = fromYear; year <= toYear; year++)
+            {
+                if(years.contains(year))
+                    continue;
+                createPartition(em, year);
+                created.add(year);
+            }
+            em.getTransaction().commit();
+            years.addAll(created);
+            if(!created.isEmpty())
+                logger.info("Created price partitions for years " + created);
+        }
+        catch (RuntimeException e)
+        {
+            if(em.getTransaction().isActive())
+                em.getTransaction().rollback();
+            throw e;
+        }
+    }
+
+    private static void createPartition(EntityManager em, int year)
+    {
+        em.createNativeQuery("CREATE TABLE IF NOT EXISTS price_y" + year + " PARTITION OF price " +
+                "FOR VALUES FROM ('" + year + "-01-01') TO ('" + (year + 1) + "-01-01')").executeUpdate();
+    }
+
+    /**
+     * Changes type of price date in partitioned price table to DATE. Partition key can't be altered,
+     * so prices are copied to regular table with DATE column, partitioned table is dropped with its partitions
+     * and the copy is converted to partitioned table again.
+     */
+    static void convertDates(EntityManager em)
+    {
+        String sequence = (String) em.createNativeQuery("SELECT pg_get_serial_sequence('price', 'id')").getSingleResult();
+        em.createNativeQuery("CREATE TABLE price_dates (LIKE price INCLUDING DEFAULTS)").executeUpdate();
+        em.createNativeQuery("ALTER TABLE price_dates ALTER COLUMN date TYPE DATE").executeUpdate();
+        em.createNativeQuery("INSERT INTO price_dates SELECT * FROM price").executeUpdate();
+        if(sequence != null)
+            em.createNativeQuery("ALTER SEQUENCE " + sequence + " OWNED BY price_dates.id").executeUpdate();           // Sequence would be dropped with old table otherwise
+        em.createNativeQuery("DROP TABLE price").executeUpdate();
+        em.createNativeQuery("ALTER TABLE price_dates RENAME TO price").executeUpdate();
+        convert(em);
+    }
+
+    /**
+     * Replaces regular price table with partitioned one, keeping ids, sequence and indexes.
+     * Table partitioned before conversion became a schema migration is left as it is.
+     */
+    static void convert(EntityManager em)
+    {
+        if(isPartitioned(em))
+            return;
+        long start = System.currentTimeMillis();
+        String sequence = (String) em.createNativeQuery("SELECT pg_get_serial_sequence('price', 'id')").getSingleResult();
+        Object[] range = (Object[]) em.createNativeQuery("SELECT CAST(coalesce(min(extract(year FROM date)), 0) AS INTEGER), " +
+                "CAST(coalesce(max(extract(year FROM date)), 0) AS INTEGER) FROM price").getSingleResult();
+        em.createNativeQuery("ALTER TABLE price RENAME TO price_unpartitioned").executeUpdate();
+        if(sequence != null)
+            em.createNativeQuery("ALTER SEQUENCE " + sequence + " OWNED BY NONE").executeUpdate();                     // Sequence would be dropped with old table otherwise
+        em.createNativeQuery("CREATE TABLE price (LIKE price_unpartitioned INCLUDING DEFAULTS) PARTITION BY RANGE (date)").executeUpdate();
+        int fromYear = ((Number) range[0]).intValue();
+        int toYear = ((Number) range[1]).intValue();
+        for(int year = fromYear; year > 0 && year <= toYear; year++)
+            createPartition(em, year);
+        int moved = em.createNativeQuery("INSERT INTO price SELECT * FROM price_unpartitioned").executeUpdate();
+        em.createNativeQuery("DROP TABLE price_unpartitioned").executeUpdate();
+        em.createNativeQuery("ALTER TABLE price ADD PRIMARY KEY (id, date)").executeUpdate();                         // Partition key has to be part of primary key
+        em.createNativeQuery("CREATE UNIQUE INDEX price_currency_date_uk ON price (currency_id, date)").executeUpdate();
+        em.createNativeQuery("ALTER TABLE price ADD FOREIGN KEY (currency_id) REFERENCES currency (id)").executeUpdate();
+        if(sequence != null)
+            em.createNativeQuery("ALTER SEQUENCE " + sequence + " OWNED BY price.id").executeUpdate();
+        logger.info("Converted price table to partitioned one, moved " + moved + " prices in " + (System.currentTimeMillis() - start) + " ms.");
+    }
+}
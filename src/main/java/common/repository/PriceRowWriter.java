@@ -0,0 +1,120 @@
+package common.repository;
+
+import common.utils.EpochDays;
+import models.CurrencyPrice;
+import org.hibernate.Session;
+import org.hibernate.type.DateType;
+import org.hibernate.type.DoubleType;
+import org.hibernate.type.FloatType;
+import org.hibernate.type.LongType;
+import org.hibernate.type.StringType;
+
+import javax.persistence.EntityManager;
+
+/**
+ * Appends rows of price tables, currencies and prices with plain insert statements, in transaction of provided EntityManager.
+ * Unlike saving entities, it doesn't need stored collections to be loaded (and dirty checked), so cost of adding
+ * a price doesn't grow with stored history. Ids of stored rows are kept by {@link IngestionIndex}.
+ * Inserted rows aren't visible to EntityManagers, that already loaded objects they belong to, until they are cleared.
+ * Parameters are bound with explicit types, so nulls (eg. bid price of average-price table) are bound as proper column type.
+ * Weekly and monthly rollups (price_rollup table) are kept up to date in the same transaction as inserted prices.
+ */
+public class PriceRowWriter
+{
+    private final Session session;
+
+    public PriceRowWriter(EntityManager em)
+    {
+        this.session = em.unwrap(Session.class);
+    }
+
+    /**
+     * @return id of inserted table
+     */
+    public Long insertTable(String tableName, String publicationDate)
+    {
+        Object id = session.createNativeQuery("INSERT INTO price_table (table_name, update_date) VALUES (?1, ?2) RETURNING id")
+                .setParameter(1, tableName, StringType.INSTANCE)
+                .setParameter(2, publicationDate, StringType.INSTANCE)
+                .getSingleResult();
+        return ((Number) id).longValue();
+    }
+
+    public void updatePublicationDate(Long tableId, String publicationDate)
+    {
+        session.createNativeQuery("UPDATE price_table SET update_date = ?1 WHERE id = ?2")
+                .setParameter(1, publicationDate, StringType.INSTANCE)
+                .setParameter(2, tableId, LongType.INSTANCE)
+                .executeUpdate();
+    }
+
+    /**
+     * @return id of inserted currency
+     */
+    public Long insertCurrency(Long tableId, String currencyCode, String name, Double converter)
+    {
+        Object id = session.createNativeQuery("INSERT INTO currency (name, converter, currency_code, table_id) VALUES (?1, ?2, ?3, ?4) RETURNING id")
+                .setParameter(1, name, StringType.INSTANCE)
+                .setParameter(2, converter, DoubleType.INSTANCE)
+                .setParameter(3, currencyCode, StringType.INSTANCE)
+                .setParameter(4, tableId, LongType.INSTANCE)
+                .getSingleResult();
+        return ((Number) id).longValue();
+    }
+
+    /**
+     * Inserts price and adds it to weekly and monthly rollups of its currency
+     */
+    public void insertPrice(Long currencyId, CurrencyPrice price)
+    {
+        session.createNativeQuery("INSERT INTO price (price, bid_price, ask_price, date, currency_id) VALUES (?1, ?2, ?3, ?4, ?5)")
+                .setParameter(1, price.getPrice(), FloatType.INSTANCE)
+                .setParameter(2, price.getBidPrice(), FloatType.INSTANCE)
+                .setParameter(3, price.getAskPrice(), FloatType.INSTANCE)
+                .setParameter(4, EpochDays.toSqlDate(price.getDay()), DateType.INSTANCE)
+                .setParameter(5, currencyId, LongType.INSTANCE)
+                .executeUpdate();
+        if(price.getPrice() == null)
+            return;
+        session.createNativeQuery("INSERT INTO price_rollup (currency_id, resolution, period_start, min_price, max_price, sum_price, price_count, " +
+                "first_date, first_price, last_date, last_price) " +
+                "SELECT ?1, r.resolution, CAST(date_trunc(r.resolution, CAST(?2 AS TIMESTAMP)) AS DATE), ?3, ?3, ?3, 1, CAST(?2 AS DATE), ?3, CAST(?2 AS DATE), ?3 " +
+                "FROM (VALUES ('week'), ('month')) AS r (resolution) " +
+                "ON CONFLICT (currency_id, resolution, period_start) DO UPDATE SET " +
+                "min_price = least(price_rollup.min_price, EXCLUDED.min_price), max_price = greatest(price_rollup.max_price, EXCLUDED.max_price), " +
+                "sum_price = price_rollup.sum_price + EXCLUDED.sum_price, price_count = price_rollup.price_count + 1, " +
+                "first_price = CASE WHEN EXCLUDED.first_date < price_rollup.first_date THEN EXCLUDED.first_price ELSE price_rollup.first_price END, " +
+                "first_date = least(price_rollup.first_date, EXCLUDED.first_date), " +
+                "last_price = CASE WHEN EXCLUDED.last_date > price_rollup.last_date THEN EXCLUDED.last_price ELSE price_rollup.last_price END, " +
+                "last_date = greatest(price_rollup.last_date, EXCLUDED.last_date)")
+                .setParameter(1, currencyId, LongType.INSTANCE)
+                .setParameter(2, EpochDays.toSqlDate(price.getDay()), DateType.INSTANCE)
+                .setParameter(3, price.getPrice(), FloatType.INSTANCE)
+                .executeUpdate();
+    }
+
+    /**
+     * Computes again weekly and monthly rollups of currency, which periods overlap provided days,
+     * eg. after its prices were loaded in bulk
+     * @param fromDay first day with changed prices (epoch day)
+     * @param toDay last day with changed prices (epoch day)
+     */
+    public void updateRollups(Long currencyId, int fromDay, int toDay)
+    {
+        session.createNativeQuery("INSERT INTO price_rollup (currency_id, resolution, period_start, min_price, max_price, sum_price, price_count, " +
+                "first_date, first_price, last_date, last_price) " +
+                "SELECT p.currency_id, r.resolution, CAST(date_trunc(r.resolution, CAST(p.date AS TIMESTAMP)) AS DATE), min(p.price), max(p.price), sum(p.price), count(*), " +
+                "min(p.date), (array_agg(p.price ORDER BY p.date))[1], max(p.date), (array_agg(p.price ORDER BY p.date DESC))[1] " +
+                "FROM price p CROSS JOIN (VALUES ('week'), ('month')) AS r (resolution) " +
+                "WHERE p.currency_id = ?1 AND p.price IS NOT NULL AND p.date >= date_trunc(r.resolution, CAST(?2 AS TIMESTAMP)) " +
+                "AND p.date < date_trunc(r.resolution, CAST(?3 AS TIMESTAMP)) + CAST('1 ' || r.resolution AS INTERVAL) " +
+                "GROUP BY p.currency_id, r.resolution, CAST(date_trunc(r.resolution, CAST(p.date AS TIMESTAMP)) AS DATE) " +
+                "ON CONFLICT (currency_id, resolution, period_start) DO UPDATE SET " +
+                "min_price = EXCLUDED.min_price, max_price = EXCLUDED.max_price, sum_price = EXCLUDED.sum_price, price_count = EXCLUDED.price_count, " +
+                "first_date = EXCLUDED.first_date, first_price = EXCLUDED.first_price, last_date = EXCLUDED.last_date, last_price = EXCLUDED.last_price")
+                .setParameter(1, currencyId, LongType.INSTANCE)
+                .setParameter(2, EpochDays.toSqlDate(fromDay), DateType.INSTANCE)
+                .setParameter(3, EpochDays.toSqlDate(toDay), DateType.INSTANCE)
+                .executeUpdate();
+    }
+}
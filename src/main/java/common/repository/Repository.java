@@ -10,6 +10,8 @@ import org.hibernate.sql.JoinType;
 import javax.persistence.EntityManager;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Created by Iwo Skwierawski on 13.12.17.
@@ -96,6 +98,42 @@ public interface Repository<T extends AbstractModel>
 
     List<T> findAllOrdered(Order order, String... aliases);
 
+    /**
+     * Streams all objects with provided field values, reading them from DB in parts of fetchSize rows,
+     * so result of any size is read in bounded memory. Objects are read by separate StatelessSession (with its own
+     * connection and read transaction), which is closed with stream, so returned stream has to be closed
+     * (eg. in try-with-resources). Read objects are detached and their collections aren't loaded,
+     * aliases may be used only in restrictions and order (joined collection may return the same object many times).
+     * @param restrictions K: field (eg. "name" or "alias.name"), V: its value
+     * @param order order of objects, null if it doesn't matter
+     * @param fetchSize number of rows fetched from DB at once
+     * @param aliases tables to join DEFAULT = LEFT OUTER JOIN
+     * @return stream of objects matching restrictions, which has to be closed
+     */
+    Stream<T> stream(Map<String, ?> restrictions, Order order, int fetchSize, String... aliases);
+
+    /**
+     * Streams all objects with provided field values, in order, which doesn't matter.
+     * Works like {@link #stream(Map, Order, int, String...)}, returned stream has to be closed as well.
+     * @param restrictions K: field (eg. "name" or "alias.name"), V: its value
+     * @param fetchSize number of rows fetched from DB at once
+     * @param aliases tables to join DEFAULT = LEFT OUTER JOIN
+     * @return stream of objects matching restrictions, which has to be closed
+     */
+    Stream<T> stream(Map<String, ?> restrictions, int fetchSize, String... aliases);
+
+    /**
+     * Passes all objects with provided field values to consumer, one by one, reading them from DB in parts of fetchSize rows.
+     * Works like {@link #stream(Map, Order, int, String...)}, but closes stream itself.
+     * @param restrictions K: field (eg. "name" or "alias.name"), V: its value
+     * @param order order of objects, null if it doesn't matter
+     * @param fetchSize number of rows fetched from DB at once
+     * @param consumer consumer of read objects
+     * @param aliases tables to join DEFAULT = LEFT OUTER JOIN
+     * @return number of read objects
+     */
+    long scroll(Map<String, ?> restrictions, Order order, int fetchSize, Consumer<? super T> consumer, String... aliases);
+
     /**
      * Checks if object containing exact field value is already present in DB
      * @param field that is used to search
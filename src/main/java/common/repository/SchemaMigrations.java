@@ -0,0 +1,132 @@
+package common.repository;
+
+import org.apache.log4j.Logger;
+
+import javax.persistence.EntityManager;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Versioned changes of DB schema, that hibernate mappings can't express (indexes, constraints, data fixes).
+ * Tables and columns are still created by hibernate (hbm2ddl), migrations are applied at startup, right after that.
+ * Applied versions are kept in schema_version table, each migration is applied once, in its own transaction.
+ * New migrations are appended at the end of {@link #MIGRATIONS} with next version number, applied ones must never change.
+ * Optional migration (eg. partitioning) is applied only while its condition holds, until then it isn't recorded
+ * and later migrations are applied without it.
+ */
+public final class SchemaMigrations
+{
+    private static final Logger logger = Logger.getLogger(SchemaMigrations.class);
+
+    private static final List<Migration> MIGRATIONS = Arrays.asList(
+            new Migration(1, "unique price per currency and day",
+                    "DELETE FROM price p USING price d WHERE p.currency_id = d.currency_id AND p.date = d.date AND p.id > d.id",
+                    "CREATE UNIQUE INDEX IF NOT EXISTS price_currency_date_uk ON price (currency_id, date)"),
+            new Migration(2, "unique currency code per table",
+                    "CREATE UNIQUE INDEX IF NOT EXISTS currency_table_code_uk ON currency (table_id, currency_code)"),
+            new Migration(3, "unique table name",
+                    "CREATE UNIQUE INDEX IF NOT EXISTS price_table_name_uk ON price_table (table_name)"),
+            new Migration(4, "weekly and monthly price rollups",
+                    "CREATE TABLE IF NOT EXISTS price_rollup (currency_id BIGINT NOT NULL REFERENCES currency (id) ON DELETE CASCADE, " +
+                            "resolution VARCHAR(5) NOT NULL, period_start DATE NOT NULL, min_price REAL NOT NULL, max_price REAL NOT NULL, " +
+                            "sum_price DOUBLE PRECISION NOT NULL, price_count INTEGER NOT NULL, first_date TIMESTAMP NOT NULL, first_price REAL NOT NULL, " +
+                            "last_date TIMESTAMP NOT NULL, last_price REAL NOT NULL, PRIMARY KEY (currency_id, resolution, period_start))",
+                    "INSERT INTO price_rollup SELECT p.currency_id, r.resolution, CAST(date_trunc(r.resolution, p.date) AS DATE), min(p.price), max(p.price), " +
+                            "sum(p.price), count(*), min(p.date), (array_agg(p.price ORDER BY p.date))[1], max(p.date), (array_agg(p.price ORDER BY p.date DESC))[1] " +
+                            "FROM price p CROSS JOIN (VALUES ('week'), ('month')) AS r (resolution) WHERE p.price IS NOT NULL " +
+                            "GROUP BY p.currency_id, r.resolution, CAST(date_trunc(r.resolution, p.date) AS DATE) ON CONFLICT DO NOTHING"),
+            new Migration(5, "price dates as calendar dates", em -> true, em -> {
+                if(PricePartitions.isPartitioned(em))                                                                   // Partitioned before this migration, its key can't be altered
+                    PricePartitions.convertDates(em);
+                else
+                    em.createNativeQuery("ALTER TABLE price ALTER COLUMN date TYPE DATE USING CAST(date AS DATE)").executeUpdate();
+                em.createNativeQuery("ALTER TABLE price_rollup ALTER COLUMN first_date TYPE DATE USING CAST(first_date AS DATE), " +
+                        "ALTER COLUMN last_date TYPE DATE USING CAST(last_date AS DATE)").executeUpdate();
+            }),
+            new Migration(6, "price table partitioned by year", em -> PricePartitions.isEnabled(em.getEntityManagerFactory()),
+                    PricePartitions::convert)
+    );
+
+    private SchemaMigrations(){}
+
+    /**
+     * Applies all migrations, that weren't applied yet. Stops at first failed migration, later ones are applied on next start.
+     * @param em Entity Manager used while connecting with DB
+     * @return the highest applied version after migration
+     */
+    public static int migrate(EntityManager em)
+    {
+        Set<Integer> applied = appliedVersions(em);
+        int version = applied.stream().mapToInt(Integer::intValue).max().orElse(0);
+        for(Migration migration : MIGRATIONS)
+        {
+            if(applied.contains(migration.version) || !migration.condition.test(em))
+                continue;
+            try
+            {
+                long start = System.currentTimeMillis();
+                em.getTransaction().begin();
+                migration.step.accept(em);
+                em.createNativeQuery("INSERT INTO schema_version (version, description, applied_at) VALUES (?1, ?2, now())")
+                        .setParameter(1, migration.version)
+                        .setParameter(2, migration.description)
+                        .executeUpdate();
+                em.getTransaction().commit();
+                version = Math.max(version, migration.version);
+                logger.info("Applied schema migration " + migration.version + " (" + migration.description + ") in " + (System.currentTimeMillis() - start) + " ms.");
+            }
+            catch (RuntimeException e)
+            {
+                if(em.getTransaction().isActive())
+                    em.getTransaction().rollback();
+                logger.error("Schema migration " + migration.version + " (" + migration.description + ") failed!", e);
+                break;
+            }
+        }
+        return version;
+    }
+
+    private static Set<Integer> appliedVersions(EntityManager em)
+    {
+        em.getTransaction().begin();
+        em.createNativeQuery("CREATE TABLE IF NOT EXISTS schema_version (version INTEGER PRIMARY KEY, " +
+                "description VARCHAR(255) NOT NULL, applied_at TIMESTAMP NOT NULL)").executeUpdate();
+        @SuppressWarnings("unchecked")
+        List<Number> versions = em.createNativeQuery("SELECT version FROM schema_version").getResultList();
+        em.getTransaction().commit();
+        Set<Integer> applied = new HashSet<>();
+        versions.forEach(version -> applied.add(version.intValue()));
+        return applied;
+    }
+
+    /**
+     * Single version of schema
+     */
+    private static class Migration
+    {
+        private final int version;
+        private final String description;
+        private final Predicate<EntityManager> condition;                                                               // Optional migration is applied only when it holds
+        private final Consumer<EntityManager> step;                                                                     // Runs inside migration's transaction
+
+        Migration(int version, String description, String... statements)
+        {
+            this(version, description, em -> true, em -> {
+                for(String statement : statements)
+                    em.createNativeQuery(statement).executeUpdate();
+            });
+        }
+
+        Migration(int version, String description, Predicate<EntityManager> condition, Consumer<EntityManager> step)
+        {
+            this.version = version;
+            this.description = description;
+            this.condition = condition;
+            this.step = step;
+        }
+    }
+}
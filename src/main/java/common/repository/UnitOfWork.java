@@ -0,0 +1,91 @@
+package common.repository;
+
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Runs single unit of work (one job step, one UI request) with its own, short-lived EntityManager,
+ * which is closed right after the work is done. EntityManagers are not thread safe, so they are never shared
+ * between threads: each unit of work borrows connection from pool only for its duration.
+ * Objects returned from unit of work are detached, so everything, that is used afterwards, has to be loaded inside.
+ */
+public class UnitOfWork
+{
+    private final EntityManagerFactory emf;
+
+    public UnitOfWork(EntityManagerFactory emf)
+    {
+        this.emf = emf;
+    }
+
+    /**
+     * Runs work without transaction, for reading only. Loaded objects are read-only: hibernate keeps no snapshots
+     * of them and never checks them for changes, so reading large results costs nothing on flush.
+     * @return result of work
+     */
+    public <T> T read(Function<EntityManager, T> work)
+    {
+        EntityManager em = emf.createEntityManager();
+        Session session = em.unwrap(Session.class);
+        session.setDefaultReadOnly(true);
+        session.setHibernateFlushMode(FlushMode.MANUAL);
+        try
+        {
+            return work.apply(em);
+        }
+        finally
+        {
+            em.close();
+        }
+    }
+
+    /**
+     * Runs work in transaction, which is committed afterwards, or rolled back if work throws exception
+     * @return result of work
+     */
+    public <T> T write(Function<EntityManager, T> work)
+    {
+        EntityManager em = emf.createEntityManager();
+        try
+        {
+            em.getTransaction().begin();
+            T result = work.apply(em);
+            em.getTransaction().commit();
+            return result;
+        }
+        finally
+        {
+            if(em.getTransaction().isActive())
+                em.getTransaction().rollback();
+            em.close();
+        }
+    }
+
+    /**
+     * Runs work, that manages its own transactions (eg. commits in parts)
+     */
+    public void run(Consumer<EntityManager> work)
+    {
+        EntityManager em = emf.createEntityManager();
+        try
+        {
+            work.accept(em);
+        }
+        finally
+        {
+            if(em.getTransaction().isActive())
+                em.getTransaction().rollback();
+            em.close();
+        }
+    }
+
+    public EntityManagerFactory getEntityManagerFactory()
+    {
+        return emf;
+    }
+}
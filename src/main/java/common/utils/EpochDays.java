@@ -0,0 +1,89 @@
+package common.utils;
+
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+
+/**
+ * Conversions between dates and epoch days (number of days since 1970-01-01).
+ * Epoch days are used wherever price dates are kept in primitive arrays.
+ */
+public final class EpochDays
+{
+    private EpochDays(){}
+
+    /**
+     * @return epoch day of provided calendar date
+     */
+    public static int of(int year, int month, int day)
+    {
+        return (int) java.time.LocalDate.of(year, month, day).toEpochDay();
+    }
+
+    /**
+     * Parses date written as yyyyMMdd (format used in nbp.pl archive files)
+     * @return epoch day or -1 if text isn't a date
+     */
+    public static int parseBasicDate(CharSequence text)
+    {
+        if(text.length() != 8)
+            return -1;
+        int value = 0;
+        for(int i = 0; i < 8; i++)
+        {
+            char c = text.charAt(i);
+            if(c < '0' || c > '9')
+                return -1;
+            value = value * 10 + (c - '0');
+        }
+        return of(value / 10000, value / 100 % 100, value % 100);
+    }
+
+    /**
+     * @return epoch day of provided date, in its own time zone
+     */
+    public static int fromDateTime(DateTime dateTime)
+    {
+        return of(dateTime.getYear(), dateTime.getMonthOfYear(), dateTime.getDayOfMonth());
+    }
+
+    /**
+     * @return start of provided day in default time zone
+     */
+    public static DateTime toDateTime(int epochDay)
+    {
+        java.time.LocalDate date = java.time.LocalDate.ofEpochDay(epochDay);
+        return new LocalDate(date.getYear(), date.getMonthValue(), date.getDayOfMonth()).toDateTimeAtStartOfDay();
+    }
+
+    /**
+     * @return provided day as SQL date (for DATE columns)
+     */
+    public static java.sql.Date toSqlDate(int epochDay)
+    {
+        return java.sql.Date.valueOf(java.time.LocalDate.ofEpochDay(epochDay));
+    }
+
+    /**
+     * @return epoch day of SQL date read from DATE column
+     */
+    public static int fromSqlDate(java.sql.Date date)
+    {
+        return (int) date.toLocalDate().toEpochDay();
+    }
+
+    /**
+     * @return year of provided day
+     */
+    public static int yearOf(int epochDay)
+    {
+        return java.time.LocalDate.ofEpochDay(epochDay).getYear();
+    }
+
+    /**
+     * @return date formatted as yyyy-MM-dd (format used in nbp.pl xml files)
+     */
+    public static String format(int epochDay)
+    {
+        return java.time.LocalDate.ofEpochDay(epochDay).toString();
+    }
+}
@@ -0,0 +1,14 @@
+package common.utils;
+
+/**
+ * Receives progress of long running tasks
+ */
+public interface ProgressListener
+{
+    /**
+     * @param stage name of currently executed stage
+     * @param done number of finished steps
+     * @param total number of all steps in that stage
+     */
+    void progress(String stage, int done, int total);
+}
@@ -1,5 +1,7 @@
 package common.utils;
 
+import models.PriceSeries;
+
 /**
  * Created by Iwo Skwierawski on 2017-12-20.
  */
@@ -12,6 +14,15 @@ public interface TrendLine
      */
     public void setValues(double[] y, double[] x);
 
+    /**
+     * Data that will be used to create trend line: prices (y-axis) by epoch days (x-axis)
+     * @param prices price series of currency
+     */
+    public default void setValues(PriceSeries prices)
+    {
+        setValues(prices.pricesAsDoubles(), prices.daysAsDoubles());
+    }
+
     /**
      * Gives a predicted y for a given x
      * @param x x-axis value
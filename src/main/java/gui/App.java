@@ -1,9 +1,12 @@
 package gui;
 
+import common.utils.EpochDays;
 import main.Global;
-import models.Currency;
-import models.CurrencyPrice;
+import models.CurrencySummary;
+import models.MarketSnapshot;
+import models.PriceSeries;
 import models.gui.CurrencyTableModel;
+import org.apache.log4j.Logger;
 import org.jfree.chart.ChartPanel;
 import org.jfree.chart.JFreeChart;
 import org.joda.time.DateTime;
@@ -14,7 +17,8 @@ import javax.swing.table.DefaultTableCellRenderer;
 import java.util.*;
 import java.awt.*;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 /**
  * Created by Iwo Skwierawski on 11.12.17.
@@ -33,10 +37,15 @@ public class App
     private JButton buttonAdd;
     private JPanel chartPanel;
     private JButton month6button;
+    private JButton rescanButton;
 
-    private Map<String, ChartPanel> chartPanelsMap = new HashMap<>();                                                   // K: currencyName V: chart panel created for that currency
+    private Map<Long, ChartPanel> chartPanelsMap = new HashMap<>();                                                     // K: currency id V: chart panel created for that currency
+    private Map<Long, ChartPanel> predictionPanelsMap = new HashMap<>();                                                // K: currency id V: prediction chart panel created for that currency
+    private long shownVersion;                                                                                          // Version of market snapshot shown in currency table, used only on Event Dispatch Thread
 
     private static final CurrencyChartService chartService = new CurrencyChartService();
+    private static final Logger logger = Logger.getLogger(App.class);
+    private static final String SCOPE_PROPERTY = "era.chartScope";                                                      // Client property of chart panel, first date of its latest requested scope
 
     /**
      * Constructor responsible for creating whole FrontEnd
@@ -47,21 +56,47 @@ public class App
         Image image = new ImageIcon("files/res/icon.jpg").getImage();
         frame.setIconImage(image);
         $$$setupUI$$$();
+        rescanButton = new JButton("Rescan files");
+        rescanButton.setToolTipText("Process downloaded files again");
+        buttonAdd.getParent().add(rescanButton);
         chartPanel.setLayout(new BoxLayout(chartPanel, BoxLayout.Y_AXIS));
         frame.setContentPane(mainPanel);
         frame.setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
         frame.pack();
         frame.setVisible(true);
+        Global.marketData.addListener(this::snapshotPublished);
         connectDataSources();
         createActionListeners();
     }
 
     /**
-     * Adds data to currencyTable and adjusts column sizes
+     * Refreshes market data in background. Safe to call from any thread, table is filled, when new snapshot is published.
      */
     public void connectDataSources() {
+        Global.asyncCurrencyService.refresh(Global.marketData).whenComplete((snapshot, e) -> {
+            if (e != null)
+                showError("Couldn't load currencies", e);
+        });
+    }
 
-        currencyTable.setModel(new CurrencyTableModel(Global.currencyService.getAllCurrencies()));
+    /**
+     * Formats currency table of published snapshot (on thread, that published it) and shows it on Event Dispatch Thread
+     */
+    private void snapshotPublished(MarketSnapshot snapshot) {
+        CurrencyTableModel model = new CurrencyTableModel(snapshot.getCurrencies());
+        SwingUtilities.invokeLater(() -> {
+            if (snapshot.getVersion() > shownVersion) {                                                                 // Listeners of concurrent refreshes may be called in any order
+                shownVersion = snapshot.getVersion();
+                showCurrencies(model);
+            }
+        });
+    }
+
+    /**
+     * Adds data to currencyTable and adjusts column sizes
+     */
+    private void showCurrencies(CurrencyTableModel model) {
+        currencyTable.setModel(model);
         currencyTable.getColumnModel().getColumn(0).setMinWidth(50);
         currencyTable.getColumnModel().getColumn(0).setMaxWidth(350);
         currencyTable.getColumnModel().getColumn(1).setMinWidth(50);
@@ -71,12 +106,23 @@ public class App
         currencyTable.getColumnModel().getColumn(1).setCellRenderer(rightRenderer);
     }
 
+    /**
+     * Logs failed background query and informs user about it
+     * @return always null, so it may be used as fallback of future
+     */
+    private Void showError(String message, Throwable e) {
+        logger.error(message, e);
+        JOptionPane.showMessageDialog(new JFrame("Error"), message + ", please try again.", "ERROR", JOptionPane.ERROR_MESSAGE);
+        return null;
+    }
+
     /**
      * Adds new chart panel to JScrollPane
      *
+     * @param currencyId id of currency, that charts are created for
      * @param chart chart, that this chart panel will contain
      */
-    private void addChartPanel(JFreeChart chart, JFreeChart predictionChart) {
+    private void addChartPanel(Long currencyId, JFreeChart chart, JFreeChart predictionChart) {
         ChartPanel newChartPanel = new ChartPanel(chart, true, true, true, false, true);
         ChartPanel predictionChartPanel = new ChartPanel(predictionChart);
         newChartPanel.setToolTipText("Select area to zoom in");
@@ -91,10 +137,7 @@ public class App
         closeButton.setToolTipText("Remove graph");
         closeButton.setMargin(new Insets(0, 0, 0, 0));
         closeButton.setFont(new Font("Arial", Font.BOLD, 16));
-        closeButton.addActionListener(e -> {
-            removeChartPanel(newChartPanel);
-            removeChartPanel(predictionChartPanel);
-        });
+        closeButton.addActionListener(e -> removeChartPanels(currencyId));
         toolBar1.add(closeButton, BorderLayout.EAST);
         toolBar1.setOpaque(false);
         newChartPanel.setLayout(new BorderLayout(0, 0));
@@ -103,28 +146,84 @@ public class App
         chartPanel.add(predictionChartPanel);
         chartPanel.revalidate();
         chartPanel.repaint();
-        chartPanelsMap.put(chart.getTitle().getText(), newChartPanel);
-        chartPanelsMap.put(predictionChart.getTitle().getText(), predictionChartPanel);
+        chartPanelsMap.put(currencyId, newChartPanel);
+        predictionPanelsMap.put(currencyId, predictionChartPanel);
+    }
+
+    /**
+     * Removes chart and prediction chart panels of currency from JScrollPane
+     */
+    private void removeChartPanels(Long currencyId) {
+        ChartPanel newChartPanel = chartPanelsMap.remove(currencyId);
+        ChartPanel predictionChartPanel = predictionPanelsMap.remove(currencyId);
+        if (newChartPanel != null)
+            chartPanel.remove(newChartPanel);
+        if (predictionChartPanel != null)
+            chartPanel.remove(predictionChartPanel);
+        chartPanel.revalidate();
+        chartPanel.repaint();
     }
 
     /**
-     * Removes chart panel for currently selected currency from JScrollPane
+     * Gets whole price history of currency from current market snapshot, or from DB, if it isn't mapped from price store yet,
+     * and converts it (eg. to charts) on background thread
+     * @param conversion converts prices to returned result
+     * @return future completed on Event Dispatch Thread
      */
-    private void removeChartPanel(ChartPanel panelToRemove) {
-        try {
-            chartPanel.remove(panelToRemove);
-            chartPanel.revalidate();
-            chartPanel.repaint();
-            chartPanelsMap.remove(panelToRemove.getChart().getTitle().getText());
-        } catch (ArrayIndexOutOfBoundsException ex) {
-            JOptionPane.showMessageDialog(new JFrame("Error"), "Please choose a currency for which you wish to create graph.", "ERROR", JOptionPane.ERROR_MESSAGE);
-        } catch (NullPointerException ex) {
-            JOptionPane.showMessageDialog(new JFrame("Error"), "This graph wasn't previously created.", "ERROR", JOptionPane.ERROR_MESSAGE);
-        }
+    private static <T> CompletableFuture<T> getSeries(Long currencyId, Function<PriceSeries, T> conversion) {
+        PriceSeries series = Global.marketData.get().getSeries(currencyId);
+        if (series != null)
+            return Global.asyncCurrencyService.compute(() -> conversion.apply(series));
+        return Global.asyncCurrencyService.getPriceSeries(currencyId, conversion);
+    }
+
+    /**
+     * @return future failed, because currency of chart isn't in market data anymore
+     */
+    private static <T> CompletableFuture<T> missingCurrency(Long currencyId) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        result.completeExceptionally(new IllegalStateException("Currency " + currencyId + " isn't in market data"));
+        return result;
+    }
+
+    /**
+     * Sets scope of each graph, loading prices and creating charts of all graphs in parallel, off Event Dispatch Thread.
+     * Longer scopes are shown with weekly or monthly prices.
+     * Prediction graphs are based on whole history of currency, unless scope is shorter than month.
+     * @param from first date of scope
+     * @param predictionFromScope should prediction be based only on prices from scope? T/F
+     * @param predictionDays number of predicted days
+     */
+    private void setChartsScope(DateTime from, boolean predictionFromScope, int predictionDays) {
+        MarketSnapshot snapshot = Global.marketData.get();
+        chartPanelsMap.forEach((currencyId, panel) -> {
+            CurrencySummary currency = snapshot.getCurrency(currencyId);
+            setChart(panel, from, currency == null ? missingCurrency(currencyId)
+                    : Global.asyncCurrencyService.getChartPrices(currency.getTableName(), currency.getCurrencyCode(), from, DateTime.now(),
+                    rollups -> chartService.createRollupChart(currency.getLabel(), rollups)));
+        });
+        predictionPanelsMap.forEach((currencyId, panel) -> {
+            CurrencySummary currency = snapshot.getCurrency(currencyId);
+            setChart(panel, from, currency == null ? missingCurrency(currencyId) : getSeries(currencyId,
+                    prices -> chartService.createPredictionChart(currency.getLabel(), predictionFromScope ? prices.since(EpochDays.fromDateTime(from)) : prices, predictionDays)));
+        });
+    }
+
+    /**
+     * Shows chart in panel, when it is created, unless newer scope of panel was requested meanwhile
+     * @param scope first date of requested scope
+     */
+    private void setChart(ChartPanel panel, DateTime scope, CompletableFuture<JFreeChart> chart) {
+        panel.putClientProperty(SCOPE_PROPERTY, scope);                                                                 // Result of older request, finished after this one, is dropped
+        chart.thenAccept(newChart -> {
+            if (scope.equals(panel.getClientProperty(SCOPE_PROPERTY)))
+                panel.setChart(newChart);
+        }).exceptionally(e -> showError("Couldn't load prices of " + panel.getChart().getTitle().getText(), e));
     }
 
     /**
      * Adds action listeners to form elements.
+     * Data of graphs is loaded in background, graphs are changed after it is loaded.
      */
     private void createActionListeners() {
         helpButton.addActionListener(e -> {                                                                             // Shows help window on click.
@@ -132,91 +231,33 @@ public class App
                     "- Zoom out: To unzoom, swipe line with mouse, over graph, starting from bottom left corner, to bottom right corner.\n" +
                     "- Add graph: New currency graph is added by using Add graph button, after selecting desired currency on list.\n" +
                     "- Remove graph: Possible, by selecting currency from list, that had previously created graph and then pushing Remove graph button.\n" +
-                    "- Graph range: Changed, by selecting one of buttons above graphs with desired range.";
+                    "- Graph range: Changed, by selecting one of buttons above graphs with desired range.\n" +
+                    "- Rescan files: Processes downloaded files again, even if they didn't change.";
             JOptionPane.showMessageDialog(new JFrame("Help"), helpMessage, "HELP", JOptionPane.QUESTION_MESSAGE);
         });
+        rescanButton.addActionListener(e -> Global.triggerProcessing(true));                                           // Forces processing of all files in import directory
         buttonAdd.addActionListener(e -> {                                                                              // Creates new graph on click. Currency must be selected from list
             try {
-                Currency selectedCurrency = ((CurrencyTableModel) currencyTable.getModel()).getObjectAt(currencyTable.getSelectedRow());
-                if (chartPanelsMap.get(selectedCurrency.getName()) == null)
-                    addChartPanel(chartService.createChart(selectedCurrency.getName(), selectedCurrency.getAvgPrices()), chartService.createPredictionChart(selectedCurrency.getName(), selectedCurrency.getAvgPrices(), 30));
-                else
+                CurrencySummary selected = ((CurrencyTableModel) currencyTable.getModel()).getObjectAt(currencyTable.getSelectedRow());
+                if (chartPanelsMap.containsKey(selected.getId())) {
                     JOptionPane.showMessageDialog(new JFrame("Error"), "Graph already created for that currency.", "ERROR", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                getSeries(selected.getId(), prices -> Arrays.asList(                                                    // Prices are loaded only for currencies with charts
+                        chartService.createChart(selected.getLabel(), prices),
+                        chartService.createPredictionChart(selected.getLabel(), prices, 30))).thenAccept(charts -> {
+                    if (!chartPanelsMap.containsKey(selected.getId()))                                                  // Button could be clicked again while prices were loaded
+                        addChartPanel(selected.getId(), charts.get(0), charts.get(1));
+                }).exceptionally(ex -> showError("Couldn't load prices of " + selected.getLabel(), ex));
             } catch (ArrayIndexOutOfBoundsException ex) {
                 JOptionPane.showMessageDialog(new JFrame("Error"), "Please choose a currency for which you wish to create graph.", "ERROR", JOptionPane.ERROR_MESSAGE);
             }
         });
-        year5Button.addActionListener(e -> {                                                                            // On click, sets scope of each graph to 5 years
-            chartPanelsMap.forEach((k, v) -> {
-                String processedKey = k.replace(" - Prediction", "");
-                Currency currency = ((CurrencyTableModel) currencyTable.getModel()).getCurrencyByName(processedKey);
-                if (k.contains("Prediction"))
-                    v.setChart(chartService.createPredictionChart(processedKey, currency.getAvgPrices(), 30));
-                else {
-                    List<CurrencyPrice> filteredPrices = currency.getAvgPrices().stream().filter(cp -> cp.getDate().plusYears(5).getMillis() >= DateTime.now().getMillis()).collect(Collectors.toList());
-                    v.setChart(chartService.createChart(k, filteredPrices));
-                }
-
-            });
-            chartPanel.revalidate();
-            chartPanel.repaint();
-        });
-        yearButton.addActionListener(e -> {                                                                             // On click, sets scope of each graph to one year
-            chartPanelsMap.forEach((k, v) -> {
-                String processedKey = k.replace(" - Prediction", "");
-                Currency currency = ((CurrencyTableModel) currencyTable.getModel()).getCurrencyByName(processedKey);
-                if (k.contains("Prediction"))
-                    v.setChart(chartService.createPredictionChart(processedKey, currency.getAvgPrices(), 30));
-                else {
-                    List<CurrencyPrice> filteredPrices = currency.getAvgPrices().stream().filter(cp -> cp.getDate().plusYears(1).getMillis() >= DateTime.now().getMillis()).collect(Collectors.toList());
-                    v.setChart(chartService.createChart(k, filteredPrices));
-                }
-            });
-            chartPanel.revalidate();
-            chartPanel.repaint();
-        });
-        month6button.addActionListener(e -> {                                                                           // On click, sets scope of each graph to six month
-            chartPanelsMap.forEach((k, v) -> {
-                String processedKey = k.replace(" - Prediction", "");
-                Currency currency = ((CurrencyTableModel) currencyTable.getModel()).getCurrencyByName(processedKey);
-                if (k.contains("Prediction"))
-                    v.setChart(chartService.createPredictionChart(processedKey, currency.getAvgPrices(), 30));
-                else {
-                    List<CurrencyPrice> filteredPrices = currency.getAvgPrices().stream().filter(cp -> cp.getDate().plusMonths(6).getMillis() >= DateTime.now().getMillis()).collect(Collectors.toList());
-                    v.setChart(chartService.createChart(k, filteredPrices));
-                }
-            });
-            chartPanel.revalidate();
-            chartPanel.repaint();
-        });
-        monthButton.addActionListener(e -> {                                                                            // On click, sets scope of each graph to one month
-            chartPanelsMap.forEach((k, v) -> {
-                String processedKey = k.replace(" - Prediction", "");
-                Currency currency = ((CurrencyTableModel) currencyTable.getModel()).getCurrencyByName(processedKey);
-                if (k.contains("Prediction"))
-                    v.setChart(chartService.createPredictionChart(processedKey, currency.getAvgPrices(), 30));
-                else {
-                    List<CurrencyPrice> filteredPrices = currency.getAvgPrices().stream().filter(cp -> cp.getDate().plusMonths(1).getMillis() >= DateTime.now().getMillis()).collect(Collectors.toList());
-                    v.setChart(chartService.createChart(k, filteredPrices));
-                }
-            });
-            chartPanel.revalidate();
-            chartPanel.repaint();
-        });
-        weekButton.addActionListener(e -> {                                                                             // On click, sets scope of each graph to one week
-            chartPanelsMap.forEach((k, v) -> {
-                String processedKey = k.replace(" - Prediction", "");
-                Currency currency = ((CurrencyTableModel) currencyTable.getModel()).getCurrencyByName(processedKey);
-                List<CurrencyPrice> filteredPrices = currency.getAvgPrices().stream().filter(cp -> cp.getDate().plusWeeks(1).getMillis() >= DateTime.now().getMillis()).collect(Collectors.toList());
-                if (k.contains("Prediction"))
-                    v.setChart(chartService.createPredictionChart(processedKey, new HashSet<>(filteredPrices), 7));
-                else {
-                    v.setChart(chartService.createChart(k, filteredPrices));
-                }
-            });
-            chartPanel.revalidate();
-            chartPanel.repaint();
-        });
+        year5Button.addActionListener(e -> setChartsScope(DateTime.now().minusYears(5), false, 30));                   // On click, sets scope of each graph to 5 years
+        yearButton.addActionListener(e -> setChartsScope(DateTime.now().minusYears(1), false, 30));                    // On click, sets scope of each graph to one year
+        month6button.addActionListener(e -> setChartsScope(DateTime.now().minusMonths(6), false, 30));                 // On click, sets scope of each graph to six month
+        monthButton.addActionListener(e -> setChartsScope(DateTime.now().minusMonths(1), false, 30));                  // On click, sets scope of each graph to one month
+        weekButton.addActionListener(e -> setChartsScope(DateTime.now().minusWeeks(1), true, 7));                      // On click, sets scope of each graph to one week
     }
 
     /**
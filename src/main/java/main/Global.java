@@ -1,17 +1,25 @@
 package main;
 
+import common.io.PriceStore;
+import common.repository.PricePartitions;
+import common.repository.SchemaMigrations;
+import common.repository.UnitOfWork;
 import gui.App;
 import org.apache.log4j.BasicConfigurator;
 import org.apache.log4j.Logger;
 import org.quartz.*;
 import org.quartz.impl.StdSchedulerFactory;
+import services.AsyncCurrencyService;
 import services.CurrencyServiceImpl;
+import services.MarketData;
 import threads.DownloaderThread;
 import threads.FileProcessingThread;
+import threads.FileWatcherThread;
 
-import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.Persistence;
+import java.nio.file.Paths;
+import java.util.Arrays;
 
 /**
  * Created by Iwo Skwierawski on 13.12.17.
@@ -23,20 +31,39 @@ public class Global
 
     public static CurrencyServiceImpl currencyService;
 
-    public static EntityManager em;
+    public static AsyncCurrencyService asyncCurrencyService;
+
+    public static MarketData marketData;
+
+    public static EntityManagerFactory emf;
+
+    public static UnitOfWork unitOfWork;
+
+    public static PriceStore priceStore;
 
     public static App app;
 
     private static final Logger logger = Logger.getLogger(Global.class);
 
+    private static final JobKey processorKey = JobKey.jobKey("processor", "fileProcess");
+
     public static void main(String[] args)
     {
-        EntityManagerFactory emf = Persistence.createEntityManagerFactory("defaultPersistenceUnit");
-        em = emf.createEntityManager();
-        currencyService = new CurrencyServiceImpl(em);
+        emf = Persistence.createEntityManagerFactory("defaultPersistenceUnit");
+        unitOfWork = new UnitOfWork(emf);
+        unitOfWork.run(em -> {
+            SchemaMigrations.migrate(em);
+            PricePartitions.init(emf, em);
+        });
+        priceStore = PriceStore.open(Paths.get("files/store"));
+        currencyService = new CurrencyServiceImpl(unitOfWork, priceStore);
+        marketData = new MarketData(currencyService, priceStore);
+        asyncCurrencyService = new AsyncCurrencyService(currencyService, 4, 64);                                        // Half of connection pool, the rest is left for ingestion
         BasicConfigurator.configure();
         app = new App();
         scheduleTasks();
+        if(Arrays.asList(args).contains("--backfill"))
+            triggerBackfill();
     }
 
     /**
@@ -46,6 +73,44 @@ public class Global
     {
         scheduleDownload();
         scheduleProcessingFiles();
+        new FileWatcherThread(Paths.get("files/import"), () -> triggerProcessing(false)).start();
+        triggerProcessing(false);                                                                                       // Files could change while application was closed
+    }
+
+    /**
+     * Checks import directory for changes right away and processes changed files.
+     * @param rescan process all files, even if they didn't change since last processing
+     */
+    public static void triggerProcessing(boolean rescan)
+    {
+        try
+        {
+            JobDataMap data = new JobDataMap();
+            data.put(FileProcessingThread.RESCAN, rescan);
+            new StdSchedulerFactory().getScheduler().triggerJob(processorKey, data);
+        }
+        catch (SchedulerException e)
+        {
+            logger.error("Error while triggering file processing", e);
+        }
+    }
+
+    /**
+     * Downloads archives from all years and saves prices, that are missing in DB.
+     * Executed by file processing job, so it never runs concurrently with processing of downloaded files.
+     */
+    public static void triggerBackfill()
+    {
+        try
+        {
+            JobDataMap data = new JobDataMap();
+            data.put(FileProcessingThread.BACKFILL, true);
+            new StdSchedulerFactory().getScheduler().triggerJob(processorKey, data);
+        }
+        catch (SchedulerException e)
+        {
+            logger.error("Error while triggering backfill", e);
+        }
     }
 
     /**
@@ -74,6 +139,8 @@ public class Global
 
     /**
      * Schedules to process downloaded xml files and save informations, that they contain to DB.
+     * Processing is mainly triggered by FileWatcherThread, scheduled run is only a fallback for missed file system events
+     * and it doesn't touch DB unless files changed.
      */
     private static void scheduleProcessingFiles()
     {
@@ -82,10 +149,10 @@ public class Global
             SchedulerFactory schedulerFactory = new StdSchedulerFactory();
             Scheduler scheduler = schedulerFactory.getScheduler();
             scheduler.start();
-            JobDetail download = JobBuilder.newJob(FileProcessingThread.class).withIdentity("processor", "fileProcess").build();
+            JobDetail download = JobBuilder.newJob(FileProcessingThread.class).withIdentity(processorKey).storeDurably().build();
             Trigger downloadTrigger = TriggerBuilder.newTrigger()
                     .withIdentity("processorTrigger", "fileProcess")
-                    .withSchedule(CronScheduleBuilder.cronSchedule("0 * * ? * MON-FRI *"))
+                    .withSchedule(CronScheduleBuilder.cronSchedule("0 0/30 * ? * MON-FRI *"))
                     .build();
             scheduler.scheduleJob(download, downloadTrigger);
             logger.info("Scheduled to process files at " + downloadTrigger.getNextFireTime());
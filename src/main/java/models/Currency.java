@@ -3,14 +3,16 @@ package models;
 import common.models.AbstractModel;
 import models.xml.XMLCurrency;
 
+import javax.persistence.Entity;
 import java.util.Comparator;
-import java.util.HashSet;
 import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * Created by Iwo Skwierawski on 11.12.17.
  * Object, that represents currency after processing it from xml
  */
+@Entity
 public class Currency extends AbstractModel
 {
 
@@ -21,7 +23,7 @@ public class Currency extends AbstractModel
 
     private Double converter;
 
-    private Set<CurrencyPrice> avgPrices = new HashSet<>();
+    private Set<CurrencyPrice> avgPrices = new TreeSet<>(new CurrencyPrice.ByDay());                                    // Sorted by day, one price per day
 
     public Currency(){}
 
@@ -32,14 +34,15 @@ public class Currency extends AbstractModel
     {
         setName(xmlCurrency.getName());
         setCurrencyCode(xmlCurrency.getCurrencyCode());
-        setConverter(Double.parseDouble(xmlCurrency.getConverter()));
+        setConverter(xmlCurrency.getConverter());
     }
 
+    /**
+     * @return the latest price of currency, null if it has none
+     */
     public CurrencyPrice getCurrentPrice()
     {
-        if(avgPrices.size() > 0)
-            return avgPrices.stream().sorted(Comparator.comparing(CurrencyPrice::getDate)).findFirst().get();
-        return null;
+        return avgPrices.stream().max(Comparator.comparingInt(CurrencyPrice::getDay)).orElse(null);
     }
 
     public Long getId() {
@@ -74,6 +77,13 @@ public class Currency extends AbstractModel
         this.currencyCode = currencyCode;
     }
 
+    /**
+     * @return prices of currency as primitive series, sorted by day
+     */
+    public PriceSeries getPriceSeries() {
+        return PriceSeries.of(avgPrices);
+    }
+
     public Set<CurrencyPrice> getAvgPrices() {
         return avgPrices;
     }
@@ -1,17 +1,23 @@
 package models;
 
 import common.models.AbstractModel;
-import org.joda.time.DateTime;
+import javax.persistence.Entity;
+import java.io.Serializable;
+import java.util.Comparator;
 
 /**
  * Created by Iwo Skwierawski on 11.12.17.
  * Object, that keeps information about currency price for specific day
  */
+@Entity
 public class CurrencyPrice extends AbstractModel
 {
     private Long id;
     private Float price;
-    private DateTime date;
+    private Float bidPrice;                                                                                             // Only for tables with bid and ask prices (C), null otherwise
+    private Float askPrice;
+    private int day;                                                                                                    // Epoch day of price
+    private Long currencyId;                                                                                            // Read only, prices are saved through their currency
 
     public CurrencyPrice(){}
 
@@ -20,6 +26,28 @@ public class CurrencyPrice extends AbstractModel
         setPrice(Float.parseFloat(price.replaceAll(",", ".")));
     }
 
+    /**
+     * @param day epoch day of price
+     */
+    public CurrencyPrice(Float price, int day)
+    {
+        setPrice(price);
+        setDay(day);
+    }
+
+    /**
+     * Multiplies all prices of this entry, used when price was published for other converter than stored one
+     */
+    public void scale(float factor)
+    {
+        if(price != null)                                                                                               // Null, when bid or ask price of table C is missing
+            setPrice(price * factor);
+        if(bidPrice != null)
+            setBidPrice(bidPrice * factor);
+        if(askPrice != null)
+            setAskPrice(askPrice * factor);
+    }
+
     @Override
     public Long getId() {
         return id;
@@ -38,11 +66,53 @@ public class CurrencyPrice extends AbstractModel
         this.price = price;
     }
 
-    public DateTime getDate() {
-        return date;
+    public Float getBidPrice() {
+        return bidPrice;
+    }
+
+    public void setBidPrice(Float bidPrice) {
+        this.bidPrice = bidPrice;
+    }
+
+    public Float getAskPrice() {
+        return askPrice;
+    }
+
+    public void setAskPrice(Float askPrice) {
+        this.askPrice = askPrice;
+    }
+
+    /**
+     * @return epoch day of price
+     */
+    public int getDay() {
+        return day;
     }
 
-    public void setDate(DateTime date) {
-        this.date = date;
+    public void setDay(int day) {
+        this.day = day;
+    }
+
+    public Long getCurrencyId() {
+        return currencyId;
+    }
+
+    public void setCurrencyId(Long currencyId) {
+        this.currencyId = currencyId;
+    }
+
+    /**
+     * Orders prices of single currency by day. Prices of currency are kept in set sorted with it ({@link Currency#getAvgPrices()}),
+     * so currency has at most one price per day. Prices of the same day are equal for it, so it mustn't compare prices of different currencies.
+     */
+    public static class ByDay implements Comparator<CurrencyPrice>, Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public int compare(CurrencyPrice first, CurrencyPrice second)
+        {
+            return Integer.compare(first.getDay(), second.getDay());
+        }
     }
 }
@@ -0,0 +1,70 @@
+package models;
+
+/**
+ * Object, that represents currency with its latest price only, without price history.
+ * Read with single projection query, used where one row per currency is shown (eg. currency table).
+ */
+public class CurrencySummary
+{
+    private final Long id;
+    private final String tableName;
+    private final String name;
+    private final String currencyCode;
+    private final Double converter;
+    private final Float latestPrice;
+    private final Integer latestDay;                                                                                    // Epoch day of the latest price
+
+    public CurrencySummary(Long id, String tableName, String name, String currencyCode, Double converter, Float latestPrice, Integer latestDay)
+    {
+        this.id = id;
+        this.tableName = tableName;
+        this.name = name;
+        this.currencyCode = currencyCode;
+        this.converter = converter;
+        this.latestPrice = latestPrice;
+        this.latestDay = latestDay;
+    }
+
+    /**
+     * @return id of currency, used to load its prices
+     */
+    public Long getId() {
+        return id;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return name shown in GUI. Currencies of bid/ask tables are also published in average price tables, under the same name,
+     * so name of bid/ask table is added to their name.
+     */
+    public String getLabel() {
+        TableDefinition table = TableDefinition.forName(tableName);
+        return table != null && table.getPriceKind() == PriceKind.BID_ASK ? name + " (table " + tableName + ")" : name;
+    }
+
+    public String getCurrencyCode() {
+        return currencyCode;
+    }
+
+    public Double getConverter() {
+        return converter;
+    }
+
+    public Float getLatestPrice() {
+        return latestPrice;
+    }
+
+    /**
+     * @return epoch day of the latest price
+     */
+    public Integer getLatestDay() {
+        return latestDay;
+    }
+}
@@ -0,0 +1,62 @@
+package models;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Object, that represents market data at one moment: summaries of all currencies and price histories,
+ * which are mapped from price store. Snapshot is immutable, so it may be read by any thread without locks.
+ * Newer data is published as a new snapshot with higher version, older snapshots are reclaimed by GC,
+ * when nobody reads them anymore.
+ */
+public class MarketSnapshot
+{
+    public static final MarketSnapshot EMPTY = new MarketSnapshot(0, Collections.emptyList(), Collections.emptyMap());
+
+    private final long version;
+    private final List<CurrencySummary> currencies;
+    private final Map<Long, CurrencySummary> currenciesById = new HashMap<>();
+    private final Map<Long, PriceSeries> series;                                                                        // K: currency id, only currencies mapped from price store
+
+    /**
+     * @param version number of snapshot, snapshots with higher numbers contain newer data
+     * @param currencies summaries of all currencies. List is copied.
+     * @param series K: currency id, V: its price history. Map is copied.
+     */
+    public MarketSnapshot(long version, List<CurrencySummary> currencies, Map<Long, PriceSeries> series)
+    {
+        this.version = version;
+        this.currencies = Collections.unmodifiableList(new ArrayList<>(currencies));
+        this.series = Collections.unmodifiableMap(new HashMap<>(series));
+        for(CurrencySummary currency : this.currencies)
+            currenciesById.put(currency.getId(), currency);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return summaries of all currencies, in order of currency table
+     */
+    public List<CurrencySummary> getCurrencies() {
+        return currencies;
+    }
+
+    /**
+     * @return summary of currency with provided id, null if snapshot doesn't contain it
+     */
+    public CurrencySummary getCurrency(Long currencyId) {
+        return currenciesById.get(currencyId);
+    }
+
+    /**
+     * @return price history of currency, null if it isn't in price store yet (it has to be read from DB then)
+     */
+    public PriceSeries getSeries(Long currencyId) {
+        return series.get(currencyId);
+    }
+}
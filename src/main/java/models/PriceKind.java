@@ -0,0 +1,46 @@
+package models;
+
+import models.xml.XMLCurrency;
+
+/**
+ * Kind of prices published in price table
+ */
+public enum PriceKind
+{
+    /**
+     * Single average price (kurs_sredni), published in tables A and B
+     */
+    AVERAGE
+    {
+        @Override
+        public CurrencyPrice createPrice(XMLCurrency currency, int day)
+        {
+            return new CurrencyPrice(currency.getAvgPrice(), day);
+        }
+    },
+    /**
+     * Bid and ask prices (kurs_kupna, kurs_sprzedazy), published in table C.
+     * Price of such entry is the middle of bid and ask, or null, if one of them is missing.
+     */
+    BID_ASK
+    {
+        @Override
+        public CurrencyPrice createPrice(XMLCurrency currency, int day)
+        {
+            Float bidPrice = currency.getBidPrice();
+            Float askPrice = currency.getAskPrice();
+            CurrencyPrice price = new CurrencyPrice(bidPrice == null || askPrice == null ? null : (bidPrice + askPrice) / 2, day);
+            price.setBidPrice(currency.getBidPrice());
+            price.setAskPrice(currency.getAskPrice());
+            return price;
+        }
+    };
+
+    /**
+     * Creates price entry from its xml equivalent
+     * @param currency parsed position of price table
+     * @param day publication date (epoch day)
+     * @return new price, ready to be saved
+     */
+    public abstract CurrencyPrice createPrice(XMLCurrency currency, int day);
+}
@@ -0,0 +1,57 @@
+package models;
+
+import common.utils.EpochDays;
+import org.joda.time.DateTime;
+
+/**
+ * Resolution of prices shown on chart. Longer ranges are shown with weekly or monthly rollups,
+ * so number of points (and rows read from DB) stays about the same for any range.
+ */
+public enum PriceResolution
+{
+    /**
+     * Every published price
+     */
+    DAY(null, 200),
+    /**
+     * Rollups of weeks, starting on monday
+     */
+    WEEK("week", 800),
+    /**
+     * Rollups of calendar months
+     */
+    MONTH("month", Integer.MAX_VALUE);
+
+    private final String field;
+    private final int maxRangeDays;
+
+    PriceResolution(String field, int maxRangeDays)
+    {
+        this.field = field;
+        this.maxRangeDays = maxRangeDays;
+    }
+
+    /**
+     * Picks resolution for range of dates
+     * @param from first date of range
+     * @param to last date of range
+     * @return the finest resolution, which is used for ranges of that length
+     */
+    public static PriceResolution forRange(DateTime from, DateTime to)
+    {
+        int days = EpochDays.fromDateTime(to) - EpochDays.fromDateTime(from);
+        for(PriceResolution resolution : values())
+        {
+            if(days <= resolution.maxRangeDays)
+                return resolution;
+        }
+        return MONTH;
+    }
+
+    /**
+     * @return name of period in price_rollup table (same as date_trunc field), null for daily prices, which aren't rolled up
+     */
+    public String getField() {
+        return field;
+    }
+}
@@ -0,0 +1,81 @@
+package models;
+
+import common.utils.EpochDays;
+import org.joda.time.DateTime;
+
+/**
+ * Object, that represents prices of single currency aggregated over one period (day, week or month).
+ * Weekly and monthly rollups are read from price_rollup table, which is updated together with saved prices.
+ */
+public class PriceRollup
+{
+    private final PriceResolution resolution;
+    private final DateTime periodStart;
+    private final float minPrice;
+    private final float maxPrice;
+    private final float avgPrice;
+    private final float firstPrice;
+    private final float lastPrice;
+    private final int priceCount;
+
+    public PriceRollup(PriceResolution resolution, DateTime periodStart, float minPrice, float maxPrice, float avgPrice, float firstPrice, float lastPrice, int priceCount)
+    {
+        this.resolution = resolution;
+        this.periodStart = periodStart;
+        this.minPrice = minPrice;
+        this.maxPrice = maxPrice;
+        this.avgPrice = avgPrice;
+        this.firstPrice = firstPrice;
+        this.lastPrice = lastPrice;
+        this.priceCount = priceCount;
+    }
+
+    /**
+     * Creates daily rollup, containing single price
+     */
+    public static PriceRollup ofPrice(CurrencyPrice price)
+    {
+        return new PriceRollup(PriceResolution.DAY, EpochDays.toDateTime(price.getDay()), price.getPrice(), price.getPrice(), price.getPrice(), price.getPrice(), price.getPrice(), 1);
+    }
+
+    public PriceResolution getResolution() {
+        return resolution;
+    }
+
+    public DateTime getPeriodStart() {
+        return periodStart;
+    }
+
+    public float getMinPrice() {
+        return minPrice;
+    }
+
+    public float getMaxPrice() {
+        return maxPrice;
+    }
+
+    public float getAvgPrice() {
+        return avgPrice;
+    }
+
+    /**
+     * @return price from the first day of period, that has price
+     */
+    public float getFirstPrice() {
+        return firstPrice;
+    }
+
+    /**
+     * @return price from the last day of period, that has price
+     */
+    public float getLastPrice() {
+        return lastPrice;
+    }
+
+    /**
+     * @return number of prices in period
+     */
+    public int getPriceCount() {
+        return priceCount;
+    }
+}
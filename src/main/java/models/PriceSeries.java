@@ -0,0 +1,211 @@
+package models;
+
+import common.utils.EpochDays;
+import org.joda.time.DateTime;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+
+/**
+ * Object, that represents price history of single currency in two primitive columns: epoch days and prices,
+ * sorted by day, with at most one price per day. Takes 8 bytes per price, instead of whole CurrencyPrice object.
+ *
+ * Series may also be backed by packed records (epoch day, price) outside of heap, eg. mapped from {@link common.io.PriceStore}.
+ *
+ * Series is immutable. Slices are views, that share columns with series they were cut from, so slicing never copies prices.
+ */
+public class PriceSeries
+{
+    public static final PriceSeries EMPTY = new PriceSeries(new int[0], new float[0], 0, 0);
+    public static final int RECORD_SIZE = 8;                                                                            // Bytes of packed record: epoch day (int), price (float)
+
+    private final int[] days;                                                                                           // Null, when series is backed by records
+    private final float[] prices;
+    private final ByteBuffer records;                                                                                   // Null, when series is backed by arrays
+    private final int from;                                                                                             // First index of this view (inclusive)
+    private final int to;                                                                                               // Last index of this view (exclusive)
+
+    private PriceSeries(int[] days, float[] prices, int from, int to)
+    {
+        this.days = days;
+        this.prices = prices;
+        this.records = null;
+        this.from = from;
+        this.to = to;
+    }
+
+    private PriceSeries(ByteBuffer records, int from, int to)
+    {
+        this.days = null;
+        this.prices = null;
+        this.records = records;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Creates series from columns, which are already sorted by day, without duplicated days. Columns are not copied,
+     * so they mustn't be changed afterwards.
+     */
+    public static PriceSeries wrap(int[] days, float[] prices)
+    {
+        if(days.length != prices.length)
+            throw new IllegalArgumentException(String.format("The numbers of days and prices must be equal (%d != %d)", days.length, prices.length));
+        return new PriceSeries(days, prices, 0, days.length);
+    }
+
+    /**
+     * Creates series backed by packed records, which are already sorted by day, without duplicated days.
+     * Records between position and limit of buffer are used, they are not copied, so they mustn't be changed afterwards.
+     */
+    public static PriceSeries ofRecords(ByteBuffer records)
+    {
+        if(records.remaining() % RECORD_SIZE != 0)
+            throw new IllegalArgumentException("Size of records must be a multiple of " + RECORD_SIZE + " bytes (" + records.remaining() + ")");
+        return new PriceSeries(records.slice(), 0, records.remaining() / RECORD_SIZE);
+    }
+
+    /**
+     * Creates series from price objects, in any order. Prices without value are skipped,
+     * from many prices of the same day, the last one is kept.
+     */
+    public static PriceSeries of(Collection<CurrencyPrice> prices)
+    {
+        CurrencyPrice[] sorted = prices.stream()
+                .filter(price -> price.getPrice() != null)
+                .sorted(Comparator.comparingInt(CurrencyPrice::getDay))
+                .toArray(CurrencyPrice[]::new);
+        int[] days = new int[sorted.length];
+        float[] values = new float[sorted.length];
+        int size = 0;
+        for(CurrencyPrice price : sorted)
+        {
+            int day = price.getDay();
+            if(size > 0 && days[size - 1] == day)
+                size--;
+            days[size] = day;
+            values[size] = price.getPrice();
+            size++;
+        }
+        return new PriceSeries(size < days.length ? Arrays.copyOf(days, size) : days, size < values.length ? Arrays.copyOf(values, size) : values, 0, size);
+    }
+
+    public int size() {
+        return to - from;
+    }
+
+    public boolean isEmpty() {
+        return to == from;
+    }
+
+    /**
+     * @return epoch day of i-th price
+     */
+    public int getDay(int i) {
+        return dayAt(from + checkIndex(i));
+    }
+
+    public float getPrice(int i) {
+        return priceAt(from + checkIndex(i));
+    }
+
+    public DateTime getDate(int i) {
+        return EpochDays.toDateTime(getDay(i));
+    }
+
+    /**
+     * @return epoch day of the latest price, -1 if series is empty
+     */
+    public int getLatestDay() {
+        return isEmpty() ? -1 : dayAt(to - 1);
+    }
+
+    /**
+     * @return the latest price, NaN if series is empty
+     */
+    public float getLatestPrice() {
+        return isEmpty() ? Float.NaN : priceAt(to - 1);
+    }
+
+    /**
+     * Cuts part of series between provided days (both inclusive), without copying it
+     * @param fromDay first epoch day of slice
+     * @param toDay last epoch day of slice
+     * @return view of prices from provided range
+     */
+    public PriceSeries slice(int fromDay, int toDay)
+    {
+        int start = lowerBound(fromDay);
+        int end = toDay == Integer.MAX_VALUE ? to : lowerBound(toDay + 1);
+        if(records != null)
+            return new PriceSeries(records, start, Math.max(start, end));
+        return new PriceSeries(days, prices, start, Math.max(start, end));
+    }
+
+    /**
+     * @return view of prices from provided day (inclusive) until the end of series
+     */
+    public PriceSeries since(int fromDay)
+    {
+        return slice(fromDay, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return copy of days, as doubles (eg. for trend lines)
+     */
+    public double[] daysAsDoubles()
+    {
+        double[] result = new double[size()];
+        for(int i = 0; i < result.length; i++)
+            result[i] = dayAt(from + i);
+        return result;
+    }
+
+    /**
+     * @return copy of prices, as doubles (eg. for trend lines)
+     */
+    public double[] pricesAsDoubles()
+    {
+        double[] result = new double[size()];
+        for(int i = 0; i < result.length; i++)
+            result[i] = priceAt(from + i);
+        return result;
+    }
+
+    /**
+     * @return index in columns of the first day, that isn't before provided one
+     */
+    private int lowerBound(int day)
+    {
+        int low = from;
+        int high = to;
+        while(low < high)
+        {
+            int middle = (low + high) >>> 1;
+            if(dayAt(middle) < day)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    private int dayAt(int index)
+    {
+        return records != null ? records.getInt(index * RECORD_SIZE) : days[index];
+    }
+
+    private float priceAt(int index)
+    {
+        return records != null ? records.getFloat(index * RECORD_SIZE + 4) : prices[index];
+    }
+
+    private int checkIndex(int i)
+    {
+        if(i < 0 || i >= size())
+            throw new IndexOutOfBoundsException("Index: " + i + ", size: " + size());
+        return i;
+    }
+}
@@ -0,0 +1,50 @@
+package models;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Describes price table published by nbp.pl: its name, kind of published prices and source file.
+ */
+public class TableDefinition
+{
+    /**
+     * All tables downloaded and processed by application
+     */
+    public static final List<TableDefinition> TABLES = Arrays.asList(
+            new TableDefinition("A", PriceKind.AVERAGE),
+            new TableDefinition("B", PriceKind.AVERAGE),
+            new TableDefinition("C", PriceKind.BID_ASK));
+
+    /**
+     * @return definition of table with provided name, null if application doesn't process such table
+     */
+    public static TableDefinition forName(String name)
+    {
+        return TABLES.stream().filter(table -> table.getName().equals(name)).findFirst().orElse(null);
+    }
+
+    private final String name;
+    private final PriceKind priceKind;
+
+    public TableDefinition(String name, PriceKind priceKind)
+    {
+        this.name = name;
+        this.priceKind = priceKind;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public PriceKind getPriceKind() {
+        return priceKind;
+    }
+
+    /**
+     * @return name of file with latest publication of this table (eg. LastA.xml)
+     */
+    public String getFileName() {
+        return "Last" + name + ".xml";
+    }
+}
@@ -0,0 +1,70 @@
+package models.csv;
+
+/**
+ * Object, that represents archive of currency prices downloaded from nbp.pl in .csv format (one table, one year).
+ * Prices are kept in columns, same as in file: prices[column][row], Float.NaN where file has no price.
+ */
+public class CSVArchive
+{
+    private final String tableName;
+    private final String[] currencyCodes;
+    private final double[] converters;
+    private final String[] names;
+    private final int[] days;
+    private final float[][] prices;
+
+    public CSVArchive(String tableName, String[] currencyCodes, double[] converters, String[] names, int[] days, float[][] prices)
+    {
+        this.tableName = tableName;
+        this.currencyCodes = currencyCodes;
+        this.converters = converters;
+        this.names = names;
+        this.days = days;
+        this.prices = prices;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public int getColumnCount() {
+        return currencyCodes.length;
+    }
+
+    public int getRowCount() {
+        return days.length;
+    }
+
+    public String getCurrencyCode(int column) {
+        return currencyCodes[column];
+    }
+
+    public double getConverter(int column) {
+        return converters[column];
+    }
+
+    public String getName(int column) {
+        return names[column];
+    }
+
+    /**
+     * @return publication date of row, as epoch day
+     */
+    public int getDay(int row) {
+        return days[row];
+    }
+
+    /**
+     * @return price or Float.NaN if there is none
+     */
+    public float getPrice(int column, int row) {
+        return prices[column][row];
+    }
+
+    /**
+     * @return first publication date in this archive as epoch day, or Integer.MAX_VALUE if archive is empty
+     */
+    public int getFirstDay() {
+        return days.length > 0 ? days[0] : Integer.MAX_VALUE;
+    }
+}
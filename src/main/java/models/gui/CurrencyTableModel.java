@@ -1,31 +1,40 @@
 package models.gui;
 
-import models.Currency;
+import models.CurrencySummary;
 
 import javax.swing.event.TableModelListener;
 import javax.swing.table.TableModel;
 import java.text.DecimalFormat;
-import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Created by Iwo Skwierawski on 13.12.17.
  * Custom created table model to fill currency table
+ * Rows are currency summaries, so table doesn't need price history of currencies. Currencies are identified by id,
+ * because the same currency may be published in many tables.
+ * Model is immutable snapshot: all cells are formatted once, when it is created (off Event Dispatch Thread),
+ * so painting a cell only reads an array. New data is shown by setting new model.
  */
 public class CurrencyTableModel implements TableModel
 {
     private final String[] columnNames = {"Currency", "Price"};
-    private List<Currency> data = new ArrayList<>();
+    private final CurrencySummary[] rows;
+    private final String[][] cells;                                                                                     // Formatted values of cells, [row][column]
 
-    public CurrencyTableModel(List<Currency> data)
+    public CurrencyTableModel(List<CurrencySummary> data)
     {
-        this.data = data;
+        DecimalFormat format = new DecimalFormat();
+        format.setMinimumFractionDigits(2);
+        this.rows = data.toArray(new CurrencySummary[0]);
+        this.cells = new String[rows.length][];
+        for(int i = 0; i < rows.length; i++)
+            cells[i] = new String[]{rows[i].getLabel(), rows[i].getLatestPrice() == null ? "" : format.format(rows[i].getLatestPrice())};
     }
 
     @Override
     public int getRowCount()
     {
-        return data.size();
+        return rows.length;
     }
 
     @Override
@@ -43,7 +52,7 @@ public class CurrencyTableModel implements TableModel
     @Override
     public Class<?> getColumnClass(int columnIndex)
     {
-        return Currency.class;
+        return String.class;
     }
 
     @Override
@@ -55,26 +64,12 @@ public class CurrencyTableModel implements TableModel
     @Override
     public Object getValueAt(int rowIndex, int columnIndex)
     {
-        if(columnIndex == 0)
-            return data.get(rowIndex).getName();
-        if(columnIndex == 1)
-        {
-            DecimalFormat format = new DecimalFormat();
-            format.setMinimumFractionDigits(2);
-            return format.format(data.get(rowIndex).getCurrentPrice().getPrice());
-        }
-
-        return null;
+        return cells[rowIndex][columnIndex];
     }
 
-    public Currency getObjectAt(int rowIndex)
+    public CurrencySummary getObjectAt(int rowIndex)
     {
-        return data.get(rowIndex);
-    }
-
-    public Currency getCurrencyByName(String currencyName)
-    {
-        return data.stream().filter(currency -> currency.getName().equals(currencyName)).findFirst().get();
+        return rows[rowIndex];
     }
 
     @Override
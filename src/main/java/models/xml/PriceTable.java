@@ -4,9 +4,8 @@ import common.models.AbstractModel;
 import org.hibernate.Criteria;
 import org.hibernate.Session;
 
+import javax.persistence.Entity;
 import javax.persistence.EntityManager;
-import javax.xml.bind.annotation.XmlElement;
-import javax.xml.bind.annotation.XmlRootElement;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
@@ -16,14 +15,13 @@ import java.util.Set;
  * Created by Iwo Skwierawski on 11.12.17.
  * Object, that represents table of currency prices downloaded from nbp.pl in .xml format
  */
-@XmlRootElement(name="tabela_kursow")
+@Entity
 public class PriceTable extends AbstractModel
 {
     private Long id;
     private String tableName;
     private String tableNr;
     private String publicationDate;
-    private List<XMLCurrency> xmlCurrencies;
     private Set<models.Currency> currencies = new HashSet<>();
 
     /**
@@ -52,7 +50,6 @@ public class PriceTable extends AbstractModel
         this.id = id;
     }
 
-    @XmlElement(name="numer_tabeli")
     public String getTableNr()
     {
         return tableNr;
@@ -63,7 +60,6 @@ public class PriceTable extends AbstractModel
         this.tableNr = tableNr;
     }
 
-    @XmlElement(name="data_publikacji")
     public String getPublicationDate()
     {
         return publicationDate;
@@ -74,15 +70,6 @@ public class PriceTable extends AbstractModel
         this.publicationDate = publicationDate;
     }
 
-    @XmlElement(name="pozycja")
-    public List<XMLCurrency> getXmlCurrencies() {
-        return xmlCurrencies;
-    }
-
-    public void setXmlCurrencies(List<XMLCurrency> currencies) {
-        this.xmlCurrencies = currencies;
-    }
-
     public String getTableName() {
         return tableName;
     }
@@ -1,28 +1,18 @@
 package models.xml;
 
-import javax.xml.bind.annotation.XmlElement;
-
 /**
  * Created by Iwo Skwierawski on 11.12.17.
  * Object, that represents single currency downloaded from nbp.pl in .xml format
  */
 public class XMLCurrency
 {
-    private Long id;
     private String name;
-    private String converter;
+    private Double converter;
     private String currencyCode;
-    private String avgPrice;
-
-    public Long getId() {
-        return id;
-    }
+    private Float avgPrice;
+    private Float bidPrice;
+    private Float askPrice;
 
-    public void setId(Long id) {
-        this.id = id;
-    }
-
-    @XmlElement(name="nazwa_waluty")
     public String getName() {
         return name;
     }
@@ -31,16 +21,14 @@ public class XMLCurrency
         this.name = name;
     }
 
-    @XmlElement(name="przelicznik")
-    public String getConverter() {
+    public Double getConverter() {
         return converter;
     }
 
-    public void setConverter(String converter) {
+    public void setConverter(Double converter) {
         this.converter = converter;
     }
 
-    @XmlElement(name="kod_waluty")
     public String getCurrencyCode() {
         return currencyCode;
     }
@@ -49,13 +37,28 @@ public class XMLCurrency
         this.currencyCode = currencyCode;
     }
 
-    @XmlElement(name="kurs_sredni")
-    public String getAvgPrice() {
+    public Float getAvgPrice() {
         return avgPrice;
     }
 
-    public void setAvgPrice(String avgPrice) {
+    public void setAvgPrice(Float avgPrice) {
         this.avgPrice = avgPrice;
     }
 
+    public Float getBidPrice() {
+        return bidPrice;
+    }
+
+    public void setBidPrice(Float bidPrice) {
+        this.bidPrice = bidPrice;
+    }
+
+    public Float getAskPrice() {
+        return askPrice;
+    }
+
+    public void setAskPrice(Float askPrice) {
+        this.askPrice = askPrice;
+    }
+
 }
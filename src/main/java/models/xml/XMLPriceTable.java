@@ -0,0 +1,48 @@
+package models.xml;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Object, that represents table of currency prices (tabela_kursow) read from nbp.pl .xml file.
+ * Unlike PriceTable it is never saved to DB, it only carries parsed values to the processing thread.
+ */
+public class XMLPriceTable
+{
+    private String tableName;
+    private String tableNr;
+    private String publicationDate;
+    private List<XMLCurrency> currencies = new ArrayList<>();
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public void setTableName(String tableName) {
+        this.tableName = tableName;
+    }
+
+    public String getTableNr() {
+        return tableNr;
+    }
+
+    public void setTableNr(String tableNr) {
+        this.tableNr = tableNr;
+    }
+
+    public String getPublicationDate() {
+        return publicationDate;
+    }
+
+    public void setPublicationDate(String publicationDate) {
+        this.publicationDate = publicationDate;
+    }
+
+    public List<XMLCurrency> getCurrencies() {
+        return currencies;
+    }
+
+    public void setCurrencies(List<XMLCurrency> currencies) {
+        this.currencies = currencies;
+    }
+}
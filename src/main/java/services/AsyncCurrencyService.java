@@ -0,0 +1,167 @@
+package services;
+
+import models.Currency;
+import models.CurrencyPrice;
+import models.CurrencySummary;
+import models.MarketSnapshot;
+import models.PriceResolution;
+import models.PriceRollup;
+import models.PriceSeries;
+import models.xml.PriceTable;
+import org.joda.time.DateTime;
+
+import javax.swing.*;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Non-blocking facade of {@link CurrencyService}, used by GUI. Each call is executed on dedicated, bounded pool
+ * of DB threads and returns future, which is completed on Swing Event Dispatch Thread, so its result may be shown
+ * in Swing components right away. Calls are independent, so e.g. prices of many charts are loaded in parallel.
+ * When pool and its queue are full, future is completed exceptionally with RejectedExecutionException.
+ */
+public class AsyncCurrencyService
+{
+    private static final Executor EDT = SwingUtilities::invokeLater;
+
+    private final CurrencyService currencyService;
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * @param currencyService service, that executes queries
+     * @param threads maximum number of queries executed at once (each uses one pooled connection)
+     * @param queueSize maximum number of queries waiting for execution
+     */
+    public AsyncCurrencyService(CurrencyService currencyService, int threads, int queueSize)
+    {
+        this.currencyService = currencyService;
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueSize), runnable -> {
+            Thread thread = new Thread(runnable, "db-query-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public CompletableFuture<List<PriceTable>> getAllTables()
+    {
+        return supply(currencyService::getAllTables);
+    }
+
+    public CompletableFuture<List<Currency>> getAllCurrencies()
+    {
+        return supply(currencyService::getAllCurrencies);
+    }
+
+    public CompletableFuture<List<CurrencySummary>> getCurrencySummaries()
+    {
+        return supply(currencyService::getCurrencySummaries);
+    }
+
+    /**
+     * Gets currency summaries and converts them still on DB thread (eg. to table model),
+     * so Event Dispatch Thread receives result, that is ready to be shown
+     * @param conversion converts summaries to returned result
+     */
+    public <T> CompletableFuture<T> getCurrencySummaries(Function<List<CurrencySummary>, T> conversion)
+    {
+        return supply(() -> conversion.apply(currencyService.getCurrencySummaries()));
+    }
+
+    public CompletableFuture<List<CurrencySummary>> getLatestPrices(DateTime asOf)
+    {
+        return supply(() -> currencyService.getLatestPrices(asOf));
+    }
+
+    public CompletableFuture<List<CurrencyPrice>> getPrices(String tableName, String currencyCode, DateTime from, DateTime to)
+    {
+        return supply(() -> currencyService.getPrices(tableName, currencyCode, from, to));
+    }
+
+    public CompletableFuture<List<PriceRollup>> getRollups(String tableName, String currencyCode, PriceResolution resolution, DateTime from, DateTime to)
+    {
+        return supply(() -> currencyService.getRollups(tableName, currencyCode, resolution, from, to));
+    }
+
+    public CompletableFuture<List<PriceRollup>> getChartPrices(String tableName, String currencyCode, DateTime from, DateTime to)
+    {
+        return supply(() -> currencyService.getChartPrices(tableName, currencyCode, from, to));
+    }
+
+    /**
+     * Gets chart prices and converts them still on DB thread (eg. to chart)
+     * @param conversion converts prices to returned result
+     */
+    public <T> CompletableFuture<T> getChartPrices(String tableName, String currencyCode, DateTime from, DateTime to, Function<List<PriceRollup>, T> conversion)
+    {
+        return supply(() -> conversion.apply(currencyService.getChartPrices(tableName, currencyCode, from, to)));
+    }
+
+    public CompletableFuture<PriceSeries> getPriceSeries(Long currencyId)
+    {
+        return supply(() -> currencyService.getPriceSeries(currencyId));
+    }
+
+    /**
+     * Gets price history of currency and converts it still on DB thread (eg. to chart)
+     * @param conversion converts prices to returned result
+     */
+    public <T> CompletableFuture<T> getPriceSeries(Long currencyId, Function<PriceSeries, T> conversion)
+    {
+        return supply(() -> conversion.apply(currencyService.getPriceSeries(currencyId)));
+    }
+
+    /**
+     * Executes work, that doesn't need DB, but is too slow for Event Dispatch Thread (eg. creating chart
+     * of prices from market snapshot), on DB thread
+     */
+    public <T> CompletableFuture<T> compute(Supplier<T> work)
+    {
+        return supply(work);
+    }
+
+    public CompletableFuture<Currency> getCurrency(Long id)
+    {
+        return supply(() -> currencyService.getCurrency(id));
+    }
+
+    /**
+     * Refreshes market data on DB thread
+     * @return future of published snapshot
+     */
+    public CompletableFuture<MarketSnapshot> refresh(MarketData marketData)
+    {
+        return supply(marketData::refresh);
+    }
+
+    /**
+     * Executes query on DB thread and completes returned future with its result (or exception) on Event Dispatch Thread
+     */
+    private <T> CompletableFuture<T> supply(Supplier<T> query)
+    {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try
+        {
+            CompletableFuture.supplyAsync(query, executor).whenComplete((value, e) -> EDT.execute(() -> {
+                if(e != null)
+                    result.completeExceptionally(e);
+                else
+                    result.complete(value);
+            }));
+        }
+        catch (RejectedExecutionException e)
+        {
+            EDT.execute(() -> result.completeExceptionally(e));
+        }
+        return result;
+    }
+}
@@ -1,6 +1,8 @@
 package services;
 
 import models.CurrencyPrice;
+import models.PriceRollup;
+import models.PriceSeries;
 import org.jfree.chart.JFreeChart;
 
 import java.util.List;
@@ -20,6 +22,7 @@ public interface ChartService
      * @return newly created, shiny graph
      */
     JFreeChart createPredictionChart(String title, Set<CurrencyPrice> prices, int timeToPredict);
+    JFreeChart createPredictionChart(String title, PriceSeries prices, int timeToPredict);
 
     /**
      * Creates a chart, where x-axis is date and y-axis us price.
@@ -30,4 +33,14 @@ public interface ChartService
      */
     JFreeChart createChart(String title, List<CurrencyPrice> prices);
     JFreeChart createChart(String title, Set<CurrencyPrice> prices);
+    JFreeChart createChart(String title, PriceSeries prices);
+
+    /**
+     * Creates a chart, where x-axis is date and y-axis is price, from prices aggregated over periods.
+     * Each period (day, week or month) is represented as bar of its average price, with trend line over them.
+     * @param title chart title
+     * @param rollups aggregated prices, ordered by start of period
+     * @return a chart, filled with data
+     */
+    JFreeChart createRollupChart(String title, List<PriceRollup> rollups);
 }
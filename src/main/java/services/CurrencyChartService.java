@@ -1,8 +1,12 @@
 package services;
 
+import common.utils.EpochDays;
 import common.utils.PolyTrendLine;
 import common.utils.TrendLine;
 import models.CurrencyPrice;
+import models.PriceResolution;
+import models.PriceRollup;
+import models.PriceSeries;
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.ChartUtilities;
 import org.jfree.chart.JFreeChart;
@@ -12,8 +16,11 @@ import org.jfree.chart.plot.XYPlot;
 import org.jfree.chart.renderer.xy.StandardXYBarPainter;
 import org.jfree.chart.renderer.xy.XYBarRenderer;
 import org.jfree.data.time.Day;
+import org.jfree.data.time.Month;
+import org.jfree.data.time.RegularTimePeriod;
 import org.jfree.data.time.TimeSeries;
 import org.jfree.data.time.TimeSeriesCollection;
+import org.jfree.data.time.Week;
 import org.jfree.data.xy.IntervalXYDataset;
 import org.jfree.data.xy.XYDataset;
 import org.joda.time.DateTime;
@@ -21,9 +28,10 @@ import org.joda.time.DateTime;
 import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Set;
+import java.util.TimeZone;
 
 /**
  * Created by Iwo Skwierawski on 2017-12-21.
@@ -31,8 +39,16 @@ import java.util.Set;
  */
 public class CurrencyChartService implements ChartService
 {
+    private static final Locale WEEK_LOCALE = Locale.UK;                                                                // Weeks start on Monday, like date_trunc('week') of rollups
+
     @Override
     public JFreeChart createPredictionChart(String title, Set<CurrencyPrice> prices, int timeToPredict)
+    {
+        return createPredictionChart(title, PriceSeries.of(prices), timeToPredict);
+    }
+
+    @Override
+    public JFreeChart createPredictionChart(String title, PriceSeries prices, int timeToPredict)
     {
         JFreeChart chart = ChartFactory.createTimeSeriesChart(
                 title + " - Prediction",
@@ -61,19 +77,46 @@ public class CurrencyChartService implements ChartService
 
     @Override
     public JFreeChart createChart(String title, List<CurrencyPrice> prices) {
+        return createChart(title, PriceSeries.of(prices));
+    }
+
+    @Override
+    public JFreeChart createChart(String title, PriceSeries prices) {
+        return createChart(title, createTrendLine(prices), createPriceDataSet(prices));
+    }
+
+    @Override
+    public JFreeChart createRollupChart(String title, List<PriceRollup> rollups) {
+        TimeSeries trendSeries = new TimeSeries("Trend Line");
+        TimeSeries priceSeries = new TimeSeries("Price");
+        TrendLine t = new PolyTrendLine(2);
+        t.setValues(rollups.stream().mapToDouble(PriceRollup::getAvgPrice).toArray(),
+                rollups.stream().map(PriceRollup::getPeriodStart).mapToDouble(EpochDays::fromDateTime).toArray());      // Epoch days, like trend lines of daily prices
+        rollups.forEach(rollup -> {
+            RegularTimePeriod period = toPeriod(rollup.getResolution(), rollup.getPeriodStart());
+            trendSeries.add(period, t.predict(EpochDays.fromDateTime(rollup.getPeriodStart())));
+            priceSeries.add(period, rollup.getAvgPrice());
+        });
+        return createChart(title, new TimeSeriesCollection(trendSeries), new TimeSeriesCollection(priceSeries));
+    }
+
+    /**
+     * Creates chart with price bars and trend line over them
+     */
+    private static JFreeChart createChart(String title, XYDataset trendLine, IntervalXYDataset prices) {
 
         JFreeChart chart = ChartFactory.createTimeSeriesChart(
                 title,
                 "Date",
                 "Price",
-                createTrendLine(prices),
+                trendLine,
                 true,
                 true,
                 false
         );
         XYPlot plot = (XYPlot) chart.getPlot();
 
-        plot.setDataset(1, createPriceDataSet(prices));
+        plot.setDataset(1, prices);
         plot.mapDatasetToRangeAxis(1, 0);
         XYBarRenderer renderer2 = new XYBarRenderer(0.20);
         renderer2.setBaseToolTipGenerator(
@@ -89,18 +132,36 @@ public class CurrencyChartService implements ChartService
 
     }
 
+    /**
+     * @return time period of chart, that starts on provided date and lasts as long as period of resolution
+     */
+    private static RegularTimePeriod toPeriod(PriceResolution resolution, DateTime start)
+    {
+        Day day = new Day(start.getDayOfMonth(), start.getMonthOfYear(), start.getYear());
+        switch (resolution)
+        {
+            case WEEK:
+                return new Week(day.getStart(), TimeZone.getDefault(), WEEK_LOCALE);
+            case MONTH:
+                return new Month(start.getMonthOfYear(), start.getYear());
+            default:
+                return day;
+        }
+    }
+
     /**
      * Creates a trend line for provided data.
      *
      * @return Trend line represented as XYDataSet
      */
-    private static XYDataset createTrendLine(List<CurrencyPrice> prices)
+    private static XYDataset createTrendLine(PriceSeries prices)
     {
         TimeSeries series1 = new TimeSeries("Trend Line");
         TrendLine t = new PolyTrendLine(2);
-        t.setValues(prices.stream().mapToDouble(CurrencyPrice::getPrice).toArray(), prices.stream().map(CurrencyPrice::getDate).mapToDouble(DateTime::getMillis).toArray());
+        t.setValues(prices);
 
-        prices.forEach(price -> series1.add(new Day(price.getDate().getDayOfMonth(), price.getDate().getMonthOfYear(), price.getDate().getYear()), t.predict(price.getDate().getMillis())));
+        for (int i = 0; i < prices.size(); i++)
+            series1.add(toDay(prices.getDay(i)), t.predict(prices.getDay(i)));
         return new TimeSeriesCollection(series1);
 
     }
@@ -111,14 +172,16 @@ public class CurrencyChartService implements ChartService
      * @param timeToPredict how much days ahead to predict (affects accuracy)
      * @return dataSet for price prediction chart
      */
-    private static XYDataset createPredictionTrendLine(Set<CurrencyPrice> prices, int timeToPredict)
+    private static XYDataset createPredictionTrendLine(PriceSeries prices, int timeToPredict)
     {
         TimeSeries series1 = new TimeSeries("Prediction");
 
         TrendLine t = new PolyTrendLine(2);
-        t.setValues(prices.stream().mapToDouble(CurrencyPrice::getPrice).toArray(), prices.stream().map(CurrencyPrice::getDate).mapToDouble(DateTime::getMillis).toArray());
+        t.setValues(prices);
         List<Double> mostRecentData = new ArrayList<>();                                                                // Prices from past (timeToPredict) days are taken into consideration when predicting future. Ordered by date, ascending.
-        prices.stream().filter(price -> price.getDate().getMillis() >= DateTime.now().minusDays(timeToPredict).getMillis()).sorted(Comparator.comparing(CurrencyPrice::getDate)).forEach(price -> mostRecentData.add(t.predict(price.getDate().getMillis())));
+        PriceSeries recentPrices = prices.since(EpochDays.fromDateTime(DateTime.now().minusDays(timeToPredict)));
+        for (int i = 0; i < recentPrices.size(); i++)
+            mostRecentData.add(t.predict(recentPrices.getDay(i)));
 
         Double avgSpeed = 0d;
         Double acceleration = 0d;
@@ -153,13 +216,20 @@ public class CurrencyChartService implements ChartService
      *
      * @return Bar DataSet used by JFreeChart framework
      */
-    private static IntervalXYDataset createPriceDataSet(List<CurrencyPrice> prices)
+    private static IntervalXYDataset createPriceDataSet(PriceSeries prices)
     {
 
         TimeSeries series1 = new TimeSeries("Price");
 
-        prices.forEach(price -> series1.add(new Day(price.getDate().getDayOfMonth(), price.getDate().getMonthOfYear(), price.getDate().getYear()), price.getPrice()));
+        for (int i = 0; i < prices.size(); i++)
+            series1.add(toDay(prices.getDay(i)), prices.getPrice(i));
         return new TimeSeriesCollection(series1);
 
     }
+
+    private static Day toDay(int epochDay)
+    {
+        DateTime date = EpochDays.toDateTime(epochDay);
+        return new Day(date.getDayOfMonth(), date.getMonthOfYear(), date.getYear());
+    }
 }
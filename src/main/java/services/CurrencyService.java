@@ -1,7 +1,14 @@
 package services;
 
 import models.Currency;
+import models.CurrencyPrice;
+import models.CurrencySummary;
+import models.PriceResolution;
+import models.PriceRollup;
+import models.PriceSeries;
 import models.xml.PriceTable;
+import org.joda.time.DateTime;
+
 import java.util.List;
 
 /**
@@ -21,4 +28,63 @@ public interface CurrencyService
      * @return list of currencies
      */
     List<Currency> getAllCurrencies();
+
+    /**
+     * Gets all currencies with their latest prices, without loading price history
+     * @return list of currency summaries, ordered by name
+     */
+    List<CurrencySummary> getCurrencySummaries();
+
+    /**
+     * Gets all currencies with their latest prices published until provided date
+     * @param asOf latest considered date (inclusive)
+     * @return list of currency summaries, ordered by name
+     */
+    List<CurrencySummary> getLatestPrices(DateTime asOf);
+
+    /**
+     * Gets prices of single currency from provided range, without loading the rest of its history
+     * @param tableName name of table, that currency belongs to (currency codes repeat between tables)
+     * @param currencyCode code of currency
+     * @param from first date of range (inclusive)
+     * @param to last date of range (inclusive)
+     * @return prices ordered by date
+     */
+    List<CurrencyPrice> getPrices(String tableName, String currencyCode, DateTime from, DateTime to);
+
+    /**
+     * Gets weekly or monthly rollups of single currency, which periods overlap provided range
+     * @param tableName name of table, that currency belongs to
+     * @param currencyCode code of currency
+     * @param resolution period of rollups (WEEK or MONTH)
+     * @param from first date of range (inclusive)
+     * @param to last date of range (inclusive)
+     * @return rollups ordered by start of period
+     */
+    List<PriceRollup> getRollups(String tableName, String currencyCode, PriceResolution resolution, DateTime from, DateTime to);
+
+    /**
+     * Gets prices of single currency from provided range, in resolution picked for length of range
+     * (daily prices are returned as rollups of single day)
+     * @param tableName name of table, that currency belongs to
+     * @param currencyCode code of currency
+     * @param from first date of range (inclusive)
+     * @param to last date of range (inclusive)
+     * @return rollups ordered by start of period
+     */
+    List<PriceRollup> getChartPrices(String tableName, String currencyCode, DateTime from, DateTime to);
+
+    /**
+     * Gets whole price history of single currency, as primitive series (without loading price objects)
+     * @param currencyId id of currency
+     * @return prices sorted by day, empty series if currency has none
+     */
+    PriceSeries getPriceSeries(Long currencyId);
+
+    /**
+     * Gets single currency with all its prices
+     * @param id id of currency
+     * @return found currency or null
+     */
+    Currency getCurrency(Long id);
 }
@@ -1,44 +1,313 @@
 package services;
 
+import common.cache.CacheStatistics;
+import common.cache.LruCache;
+import common.io.PriceStore;
+import common.models.AbstractModel;
 import common.repository.HibernateRepository;
+import common.repository.NamedQueries;
 import common.repository.Repository;
+import common.repository.UnitOfWork;
+import common.utils.EpochDays;
 import models.Currency;
 import models.CurrencyPrice;
+import models.CurrencySummary;
+import models.PriceResolution;
+import models.PriceRollup;
+import models.PriceSeries;
 import models.xml.PriceTable;
+import org.apache.log4j.Logger;
 import org.hibernate.criterion.Order;
+import org.joda.time.DateTime;
 
 import javax.persistence.EntityManager;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 /**
  * Created by Iwo Skwierawski on 13.12.17.
  * Implements methods from FPS interface
+ * Data changes only when new prices are saved, so query results are cached until ingestion evicts them.
+ * Each call is a separate unit of work with its own EntityManager, so service can be used by many threads at once.
+ * Price histories are mapped from price store, DB is queried only for currencies, which store doesn't have yet.
  */
 public class CurrencyServiceImpl implements CurrencyService
 {
-    private final Repository<PriceTable> tableReo;
-    private final Repository<Currency> currencyRepo;
-    private final Repository<CurrencyPrice> priceRepo;
+    private final UnitOfWork unitOfWork;
+    private final PriceStore priceStore;
 
-    public CurrencyServiceImpl(EntityManager em)
+    private static final Logger logger = Logger.getLogger(CurrencyServiceImpl.class);
+    private static final int STREAM_FETCH_SIZE = 10000;                                                                 // Prices fetched at once, while whole price table is read
+    private final LruCache<Integer, List<CurrencySummary>> summaryCache = new LruCache<>("summaries", 8);             // K: epoch day of asOf date
+    private final LruCache<List<Object>, List<CurrencyPrice>> priceCache = new LruCache<>("prices", 256);              // K: table name, currency code, epoch days of range
+    private final LruCache<List<Object>, List<PriceRollup>> rollupCache = new LruCache<>("rollups", 256);              // K: table name, currency code, resolution, epoch days of range
+    private final LruCache<Long, PriceSeries> seriesCache = new LruCache<>("series", 64);                              // K: currency id
+    private final LruCache<Long, Currency> currencyCache = new LruCache<>("currencies", 64);                           // K: currency id
+
+    public CurrencyServiceImpl(UnitOfWork unitOfWork, PriceStore priceStore)
+    {
+        this.unitOfWork = unitOfWork;
+        this.priceStore = priceStore;
+    }
+
+    private static <T extends AbstractModel> Repository<T> repository(Class<T> type, EntityManager em)
     {
-        this.tableReo = new HibernateRepository<>(PriceTable.class);
-        tableReo.setEm(em);
-        this.currencyRepo = new HibernateRepository<>(Currency.class);
-        currencyRepo.setEm(em);
-        this.priceRepo = new HibernateRepository<>(CurrencyPrice.class);
-        priceRepo.setEm(em);
+        Repository<T> repository = new HibernateRepository<>(type);
+        repository.setEm(em);
+        return repository;
     }
 
     @Override
     public List<PriceTable> getAllTables()
     {
-        return tableReo.findAll();
+        return unitOfWork.read(em -> repository(PriceTable.class, em).findAll());
     }
 
     @Override
     public List<Currency> getAllCurrencies()
     {
-        return currencyRepo.findAllOrdered(Order.asc("name"));
+        return unitOfWork.read(em -> repository(Currency.class, em).findAllOrdered(Order.asc("name")));
+    }
+
+    @Override
+    public List<CurrencySummary> getCurrencySummaries()
+    {
+        return getLatestPrices(DateTime.now());
+    }
+
+    /**
+     * Latest price of each currency is found with correlated subquery, backed by unique index on price(currency_id, date).
+     * Results are cached per day.
+     */
+    @Override
+    public List<CurrencySummary> getLatestPrices(DateTime asOf)
+    {
+        return summaryCache.get(EpochDays.fromDateTime(asOf), day -> unitOfWork.read(em -> Collections.unmodifiableList(
+                NamedQueries.timed(NamedQueries.LATEST_PRICES, () -> em.createNamedQuery(NamedQueries.LATEST_PRICES, CurrencySummary.class)
+                        .setParameter("asOf", day)
+                        .getResultList()))));
+    }
+
+    /**
+     * Table and currency are found by unique indexes on their names, prices by range scan of index on price(currency_id, date).
+     * Range is extended to whole days (prices are given for days), results are cached per currency and range.
+     */
+    @Override
+    public List<CurrencyPrice> getPrices(String tableName, String currencyCode, DateTime from, DateTime to)
+    {
+        List<Object> key = Arrays.asList(tableName, currencyCode, EpochDays.fromDateTime(from), EpochDays.fromDateTime(to));
+        return priceCache.get(key, k -> unitOfWork.read(em -> Collections.unmodifiableList(
+                NamedQueries.timed(NamedQueries.PRICES_IN_RANGE, () -> em.createNamedQuery(NamedQueries.PRICES_IN_RANGE, CurrencyPrice.class)
+                        .setParameter("tableName", tableName)
+                        .setParameter("currencyCode", currencyCode)
+                        .setParameter("from", k.get(2))
+                        .setParameter("to", k.get(3))
+                        .getResultList()))));
+    }
+
+    /**
+     * Rollups are read from price_rollup table, by range scan of its primary key (native named query). Results are cached per currency, resolution and range.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<PriceRollup> getRollups(String tableName, String currencyCode, PriceResolution resolution, DateTime from, DateTime to)
+    {
+        List<Object> key = Arrays.asList(tableName, currencyCode, resolution, EpochDays.fromDateTime(from), EpochDays.fromDateTime(to));
+        return rollupCache.get(key, k -> unitOfWork.read(em -> {
+            List<Object[]> rows = NamedQueries.timed(NamedQueries.ROLLUPS_IN_RANGE, () -> em.createNamedQuery(NamedQueries.ROLLUPS_IN_RANGE)
+                    .setParameter("tableName", tableName)
+                    .setParameter("currencyCode", currencyCode)
+                    .setParameter("resolution", resolution.getField())
+                    .setParameter("from", EpochDays.toSqlDate((Integer) k.get(3)))
+                    .setParameter("to", EpochDays.toSqlDate((Integer) k.get(4)))
+                    .getResultList());
+            return Collections.unmodifiableList(rows.stream()
+                    .map(row -> new PriceRollup(resolution, new DateTime(row[0]), (Float) row[1], (Float) row[2], (Float) row[3], (Float) row[4], (Float) row[5], (Integer) row[6]))
+                    .collect(Collectors.toList()));
+        }));
+    }
+
+    /**
+     * Ranges up to few months are read as daily prices, longer ones as weekly or monthly rollups,
+     * so each chart reads at most few hundreds of rows.
+     */
+    @Override
+    public List<PriceRollup> getChartPrices(String tableName, String currencyCode, DateTime from, DateTime to)
+    {
+        PriceResolution resolution = PriceResolution.forRange(from, to);
+        if(resolution != PriceResolution.DAY)
+            return getRollups(tableName, currencyCode, resolution, from, to);
+        return getPrices(tableName, currencyCode, from, to).stream()
+                .filter(price -> price.getPrice() != null)
+                .map(PriceRollup::ofPrice)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Series is mapped from price store. Series of currencies, which are missing in store, are read from DB
+     * and cached per currency.
+     */
+    @Override
+    public PriceSeries getPriceSeries(Long currencyId)
+    {
+        PriceSeries stored = priceStore.getSeries(currencyId);
+        if(stored != null)
+            return stored;
+        return seriesCache.get(currencyId, this::readPriceSeries);
+    }
+
+    /**
+     * Compares number of prices of each currency in price store and in DB. Histories, that differ, are read from DB
+     * and store is rewritten with them. Executed by ingestion, after prices were saved.
+     * When most histories differ (eg. after backfill), whole price table is streamed once, instead of querying each currency.
+     * @return was store rewritten? T/F
+     */
+    @SuppressWarnings("unchecked")
+    public boolean synchronizePriceStore() throws IOException
+    {
+        List<Object[]> counts = unitOfWork.read(em -> NamedQueries.timed(NamedQueries.PRICE_COUNTS, () -> em.createNamedQuery(NamedQueries.PRICE_COUNTS)
+                .getResultList()));
+        Map<Long, PriceSeries> prices = new HashMap<>();
+        Set<Long> changed = new HashSet<>();
+        for(Object[] row : counts)
+        {
+            Long currencyId = (Long) row[0];
+            PriceSeries stored = priceStore.getSeries(currencyId);
+            if(stored == null || stored.size() != (Integer) row[1])
+                changed.add(currencyId);
+            else
+                prices.put(currencyId, stored);
+        }
+        if(changed.isEmpty() && prices.size() == priceStore.size())
+            return false;
+        if(changed.size() > counts.size() / 2)
+            prices.putAll(streamPriceSeries(changed));
+        else
+            changed.forEach(currencyId -> prices.put(currencyId, readPriceSeries(currencyId)));
+        priceStore.rewrite(prices);
+        seriesCache.clear();                                                                                            // Series of all currencies are mapped now
+        logger.info("Price store synchronized, histories of " + changed.size() + " currencies read from DB.");
+        return true;
+    }
+
+    /**
+     * Reads series of provided currencies with single scan of price table. Prices are streamed ordered by currency,
+     * so only prices of one currency are kept as objects at once.
+     * @return K: currency id, V: its series
+     */
+    private Map<Long, PriceSeries> streamPriceSeries(Set<Long> currencyIds)
+    {
+        SeriesCollector collector = new SeriesCollector(currencyIds);
+        unitOfWork.read(em -> repository(CurrencyPrice.class, em).scroll(Collections.emptyMap(), Order.asc("currencyId"), STREAM_FETCH_SIZE, collector));
+        collector.flush();
+        return collector.series;
+    }
+
+    /**
+     * Series is read with narrow native query, which returns epoch days computed by DB, straight into primitive columns.
+     */
+    @SuppressWarnings("unchecked")
+    private PriceSeries readPriceSeries(Long currencyId)
+    {
+        return unitOfWork.read(em -> {
+            List<Object[]> rows = NamedQueries.timed(NamedQueries.PRICE_SERIES, () -> em.createNamedQuery(NamedQueries.PRICE_SERIES)
+                    .setParameter("currencyId", currencyId)
+                    .getResultList());
+            int[] days = new int[rows.size()];
+            float[] prices = new float[rows.size()];
+            for(int i = 0; i < rows.size(); i++)
+            {
+                days[i] = (Integer) rows.get(i)[0];
+                prices[i] = (Float) rows.get(i)[1];
+            }
+            return PriceSeries.wrap(days, prices);
+        });
+    }
+
+    @Override
+    public Currency getCurrency(Long id)
+    {
+        return currencyCache.get(id, key -> unitOfWork.read(em -> repository(Currency.class, em).findById(key)));
+    }
+
+    /**
+     * Evicts cached data, that could change after new prices of table were saved
+     */
+    public void evictTable(String tableName)
+    {
+        summaryCache.clear();
+        priceCache.evict(key -> key.get(0).equals(tableName));
+        rollupCache.evict(key -> key.get(0).equals(tableName));
+        seriesCache.clear();
+        currencyCache.clear();                                                                                          // Cached currencies and series don't know their table
+        logger.info("Evicted cached data of table " + tableName + ": " + getCacheStatistics());
+        NamedQueries.logStatistics();
+    }
+
+    /**
+     * Evicts all cached data
+     */
+    public void evictAll()
+    {
+        summaryCache.clear();
+        priceCache.clear();
+        rollupCache.clear();
+        seriesCache.clear();
+        currencyCache.clear();
+        logger.info("Evicted all cached data: " + getCacheStatistics());
+        NamedQueries.logStatistics();
+    }
+
+    /**
+     * @return hit/miss statistics of each cache region
+     */
+    public List<CacheStatistics> getCacheStatistics()
+    {
+        return Arrays.asList(summaryCache.getStatistics(), priceCache.getStatistics(), rollupCache.getStatistics(), seriesCache.getStatistics(),
+                currencyCache.getStatistics());
+    }
+
+    /**
+     * Builds series from prices ordered by currency, series of currency is built, when its last price comes
+     */
+    private static class SeriesCollector implements Consumer<CurrencyPrice>
+    {
+        private final Set<Long> currencyIds;
+        private final Map<Long, PriceSeries> series = new HashMap<>();
+        private final List<CurrencyPrice> prices = new ArrayList<>();                                                   // Prices of current currency
+        private Long currencyId;
+
+        SeriesCollector(Set<Long> currencyIds)
+        {
+            this.currencyIds = currencyIds;
+        }
+
+        @Override
+        public void accept(CurrencyPrice price)
+        {
+            if(!price.getCurrencyId().equals(currencyId))
+            {
+                flush();
+                currencyId = price.getCurrencyId();
+            }
+            if(currencyIds.contains(currencyId))
+                prices.add(price);
+        }
+
+        void flush()
+        {
+            if(!prices.isEmpty())
+                series.put(currencyId, PriceSeries.of(prices));
+            prices.clear();
+        }
     }
 }
@@ -0,0 +1,77 @@
+package services;
+
+import common.io.PriceStore;
+import models.CurrencySummary;
+import models.MarketSnapshot;
+import models.PriceSeries;
+import org.apache.log4j.Logger;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Publishes current {@link MarketSnapshot}. Snapshot is built by thread, that refreshes data (eg. ingestion, after new prices were saved)
+ * and published with single atomic swap, so readers (GUI, charts) always get complete snapshot without any locks.
+ * Refreshes may run concurrently: version is taken before data is read, so snapshot of older refresh never replaces newer one.
+ */
+public class MarketData
+{
+    private static final Logger logger = Logger.getLogger(MarketData.class);
+
+    private final CurrencyService currencyService;
+    private final PriceStore priceStore;
+    private final AtomicReference<MarketSnapshot> current = new AtomicReference<>(MarketSnapshot.EMPTY);
+    private final AtomicLong versions = new AtomicLong();
+    private final List<Consumer<MarketSnapshot>> listeners = new CopyOnWriteArrayList<>();
+
+    public MarketData(CurrencyService currencyService, PriceStore priceStore)
+    {
+        this.currencyService = currencyService;
+        this.priceStore = priceStore;
+    }
+
+    /**
+     * @return the latest published snapshot, empty one before first refresh
+     */
+    public MarketSnapshot get()
+    {
+        return current.get();
+    }
+
+    /**
+     * @param listener receives each published snapshot, on thread, that published it
+     */
+    public void addListener(Consumer<MarketSnapshot> listener)
+    {
+        listeners.add(listener);
+    }
+
+    /**
+     * Reads current data, builds new snapshot and publishes it, unless newer one was published meanwhile
+     * @return published snapshot (the newer one, if this one was dropped)
+     */
+    public MarketSnapshot refresh()
+    {
+        long version = versions.incrementAndGet();
+        List<CurrencySummary> currencies = currencyService.getCurrencySummaries();
+        Map<Long, PriceSeries> series = new HashMap<>();
+        for(CurrencySummary currency : currencies)
+        {
+            PriceSeries stored = priceStore.getSeries(currency.getId());
+            if(stored != null)
+                series.put(currency.getId(), stored);
+        }
+        MarketSnapshot snapshot = new MarketSnapshot(version, currencies, series);
+        MarketSnapshot published = current.accumulateAndGet(snapshot, (previous, next) -> next.getVersion() > previous.getVersion() ? next : previous);
+        if(published != snapshot)
+            return published;
+        logger.info("Published market snapshot " + version + " with " + currencies.size() + " currencies, " + series.size() + " of them mapped from price store.");
+        listeners.forEach(listener -> listener.accept(snapshot));
+        return snapshot;
+    }
+}
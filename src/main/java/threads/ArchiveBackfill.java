@@ -0,0 +1,306 @@
+package threads;
+
+import common.io.Downloader;
+import common.parsers.ArchiveCsvParser;
+import common.pipeline.StagedPipeline;
+import common.repository.BulkPriceLoader;
+import common.repository.IngestionIndex;
+import common.repository.PricePartitions;
+import common.repository.PriceRowWriter;
+import common.utils.EpochDays;
+import common.utils.ProgressListener;
+import models.CurrencyPrice;
+import models.csv.CSVArchive;
+import org.apache.log4j.Logger;
+import org.joda.time.DateTime;
+
+import javax.persistence.EntityManager;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Fills DB with archived prices from many years.
+ * Archive files (one per table and year) flow through staged pipeline: download -> parse -> validate -> persist,
+ * so network, CPU and DB are busy at the same time. Each archive is saved in its own transaction,
+ * prices for days, that are already stored, are skipped. Archives are persisted newest first, whatever order they were
+ * downloaded and parsed in, so currencies are created with current converters.
+ * Archives from past years never change, so they are downloaded only if they are missing in import directory.
+ */
+public class ArchiveBackfill
+{
+    public static final String DEFAULT_BASE_URL = "http://www.nbp.pl/kursy/Archiwum/";
+    public static final int FIRST_YEAR = 2002;                                                                          // First year with archive published in .csv format
+    public static final String[] TABLES = {"A", "B"};
+
+    private static final Logger logger = Logger.getLogger(ArchiveBackfill.class);
+    private static final int DOWNLOAD_THREADS = 4;
+    private static final int PARSE_THREADS = 2;
+    private static final int QUEUE_CAPACITY = 4;
+
+    private final String baseUrl;
+    private final File directory;
+    private final ProgressListener listener;
+    private final ArchiveCsvParser parser = new ArchiveCsvParser();
+    private final Downloader downloader = new Downloader();
+
+    /**
+     * @param baseUrl address of directory containing archiwum_tab_*.csv files
+     * @param directory local directory, where archive files are kept
+     * @param listener receives progress of download and persist stages
+     */
+    public ArchiveBackfill(String baseUrl, File directory, ProgressListener listener)
+    {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
+        this.directory = directory;
+        this.listener = listener;
+    }
+
+    public ArchiveBackfill()
+    {
+        this(DEFAULT_BASE_URL, new File("files/import"),
+                (stage, done, total) -> logger.info("Backfill " + stage + ": " + done + "/" + total));
+    }
+
+    /**
+     * Downloads (if needed), parses and saves archives of all tables from provided years.
+     * Failure of single file is logged and skipped, so backfill works with whatever is available.
+     * @param em Entity Manager used while saving prices, used only by persist stage
+     * @param index days with already stored prices, prices for them are skipped
+     * @return number of added prices
+     */
+    public int run(EntityManager em, IngestionIndex index, int fromYear, int toYear) throws InterruptedException
+    {
+        if(!directory.exists())
+            directory.mkdirs();
+        int total = TABLES.length * (toYear - fromYear + 1);
+        AtomicInteger downloaded = new AtomicInteger();
+        AtomicInteger persisted = new AtomicInteger();
+        ArchiveLoader loader = new ArchiveLoader(em, index);
+        OrderedPersist persist = new OrderedPersist(archive -> {
+            loader.load(archive);
+            listener.progress("persist", persisted.incrementAndGet(), total);
+        });
+
+        StagedPipeline<ArchiveSource> pipeline = StagedPipeline
+                .first("download", DOWNLOAD_THREADS, QUEUE_CAPACITY, (ArchiveSource source) -> {
+                    download(source);
+                    listener.progress("download", downloaded.incrementAndGet(), total);
+                    return source;
+                })
+                .then("parse", PARSE_THREADS, QUEUE_CAPACITY, this::parse)
+                .then("validate", 1, QUEUE_CAPACITY, ArchiveBackfill::validate)
+                .end("persist", 1, QUEUE_CAPACITY, persist::accept);
+        int order = 0;
+        for(int year = toYear; year >= fromYear; year--)                                                                // Newest first, so currencies are created with current converters
+            for(String table : TABLES)
+                pipeline.submit(new ArchiveSource(order++, table, year, new File(directory, "Archive" + table + "-" + year + ".csv")));
+        pipeline.finish();
+        persist.flush();
+        logger.info("Backfill finished, " + loader.skipped + " already stored prices skipped: " + pipeline.getStatistics());
+        return loader.added;
+    }
+
+    /**
+     * Downloads archive, unless it is already present and can't change anymore.
+     * Unavailable archive isn't dropped, it's passed on without file, so persist stage knows, it won't come.
+     */
+    private void download(ArchiveSource source)
+    {
+        if(!source.file.exists() || source.year == DateTime.now().getYear())
+        {
+            if(downloader.download(baseUrl + "archiwum_tab_" + source.table.toLowerCase() + "_" + source.year + ".csv", source.file) == Downloader.Result.FAILED)
+                logger.warn("Couldn't download archive " + source.table + " from " + source.year + ", using local copy if there is one.");
+        }
+    }
+
+    private ArchiveSource parse(ArchiveSource source)
+    {
+        if(!source.file.exists())
+            return source;
+        try
+        {
+            source.archive = parser.parse(source.file, source.table);
+        }
+        catch (IOException e)
+        {
+            logger.error("Error while processing archive file " + source.file, e);
+        }
+        return source;
+    }
+
+    /**
+     * Drops archives without publications and currencies.
+     * @return source, without archive if there is nothing to save
+     */
+    private static ArchiveSource validate(ArchiveSource source)
+    {
+        CSVArchive archive = source.archive;
+        if(archive != null && (archive.getRowCount() == 0 || archive.getColumnCount() == 0))
+        {
+            logger.warn("Archive of table " + archive.getTableName() + " contains no prices, skipped.");
+            source.archive = null;
+        }
+        return source;
+    }
+
+    /**
+     * Single archive file to process
+     */
+    private static class ArchiveSource
+    {
+        private final int order;                                                                                        // Position in order of submission (newest year first)
+        private final String table;
+        private final int year;
+        private final File file;
+        private CSVArchive archive;                                                                                     // Set by parse stage, null if there is nothing to save
+
+        ArchiveSource(int order, String table, int year, File file)
+        {
+            this.order = order;
+            this.table = table;
+            this.year = year;
+            this.file = file;
+        }
+    }
+
+    /**
+     * Passes archives to loader in order of submission, whatever order they left parse stage in.
+     * Archive, that comes too early, waits until all archives before it are persisted. Used only by single persist thread.
+     * Sources dropped by an exception in earlier stage never come, so archives waiting for them are persisted by {@link #flush()}.
+     */
+    private static class OrderedPersist
+    {
+        private final Consumer<CSVArchive> loader;
+        private final Map<Integer, ArchiveSource> waiting = new TreeMap<>();                                            // K: order of source
+        private int next;
+
+        OrderedPersist(Consumer<CSVArchive> loader)
+        {
+            this.loader = loader;
+        }
+
+        void accept(ArchiveSource source)
+        {
+            waiting.put(source.order, source);
+            ArchiveSource ready;
+            while((ready = waiting.remove(next)) != null)
+            {
+                next++;
+                persist(ready);
+            }
+        }
+
+        /**
+         * Persists archives still waiting for missing ones, in order of submission
+         */
+        void flush()
+        {
+            for(ArchiveSource source : waiting.values())
+                persist(source);
+            waiting.clear();
+        }
+
+        private void persist(ArchiveSource source)
+        {
+            if(source.archive == null)
+                return;
+            try
+            {
+                loader.accept(source.archive);
+            }
+            catch (RuntimeException e)                                                                                  // Failed archive mustn't stop the ones waiting for it
+            {
+                logger.error("Error while persisting archive " + source.table + " from " + source.year, e);
+            }
+        }
+    }
+
+    /**
+     * Saves archives to DB, one transaction per archive. Used only by single persist thread.
+     * Prices are bulk loaded (COPY on PostgreSQL), using ids from ingestion index, so stored history isn't loaded.
+     * Prices are stored in units of currency's converter, so prices from years with other converter are recalculated.
+     */
+    private static class ArchiveLoader
+    {
+        private final EntityManager em;
+        private final IngestionIndex index;
+        private final PriceRowWriter writer;
+        private final BulkPriceLoader bulkLoader;
+        private final Set<String> newTables = new HashSet<>();
+        private int added;
+        private int skipped;
+
+        ArchiveLoader(EntityManager em, IngestionIndex index)
+        {
+            this.em = em;
+            this.index = index;
+            this.writer = new PriceRowWriter(em);
+            this.bulkLoader = new BulkPriceLoader(em);
+        }
+
+        void load(CSVArchive archive)
+        {
+            try
+            {
+                String lastDate = EpochDays.format(archive.getDay(archive.getRowCount() - 1));
+                PricePartitions.ensureYears(em, EpochDays.yearOf(archive.getFirstDay()), EpochDays.yearOf(archive.getDay(archive.getRowCount() - 1)));
+                em.getTransaction().begin();
+                IngestionIndex.TableEntry table = index.getTable(em, archive.getTableName());
+                if(table.getId() == null)
+                {
+                    table.setId(writer.insertTable(archive.getTableName(), lastDate));
+                    newTables.add(archive.getTableName());
+                }
+                int skippedNow = 0;
+                Set<Long> changedCurrencies = new HashSet<>();
+                for(int column = 0; column < archive.getColumnCount(); column++)
+                {
+                    String code = archive.getCurrencyCode(column);
+                    IngestionIndex.CurrencyEntry currency = table.getCurrency(code);
+                    if(currency == null)
+                        currency = table.addCurrency(code, writer.insertCurrency(table.getId(), code, archive.getName(column), archive.getConverter(column)), archive.getConverter(column));
+                    float scale = (float) (currency.getConverter() / archive.getConverter(column));
+                    for(int row = 0; row < archive.getRowCount(); row++)
+                    {
+                        float price = archive.getPrice(column, row);
+                        if(Float.isNaN(price))
+                            continue;
+                        if(!currency.addDay(em, archive.getDay(row)))
+                        {
+                            skippedNow++;
+                            continue;
+                        }
+                        bulkLoader.add(currency.getId(), new CurrencyPrice(price * scale, archive.getDay(row)));
+                        changedCurrencies.add(currency.getId());
+                    }
+                }
+                int addedNow = bulkLoader.flush();
+                for(Long currencyId : changedCurrencies)                                                                // Rollups are computed once per currency, not per loaded price
+                    writer.updateRollups(currencyId, archive.getFirstDay(), archive.getDay(archive.getRowCount() - 1));
+                boolean newerPublication = newTables.contains(table.getTableName())
+                        && (table.getPublicationDate() == null || table.getPublicationDate().compareTo(lastDate) < 0);
+                if(newerPublication)
+                    writer.updatePublicationDate(table.getId(), lastDate);
+                em.getTransaction().commit();
+                if(newerPublication)
+                    table.setPublicationDate(lastDate);
+                added += addedNow;
+                skipped += skippedNow;
+            }
+            catch (RuntimeException e)
+            {
+                bulkLoader.clear();
+                if(em.getTransaction().isActive())
+                    em.getTransaction().rollback();
+                index.invalidate(archive.getTableName());                                                               // Index may contain ids and days of rolled back rows
+                throw e;
+            }
+        }
+    }
+}
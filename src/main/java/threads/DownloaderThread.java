@@ -1,16 +1,16 @@
 package threads;
 
 
-import org.apache.commons.io.FileUtils;
+import common.io.Downloader;
+import models.TableDefinition;
 import org.apache.log4j.Logger;
 import org.joda.time.DateTime;
 import org.quartz.Job;
 import org.quartz.JobExecutionContext;
 
 import java.io.File;
-import java.io.IOException;
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Created by Iwo Skwierawski on 11.12.17.
@@ -18,80 +18,36 @@ import java.net.URL;
  */
 public class DownloaderThread implements Job
 {
+    public static final String DEFAULT_BASE_URL = "http://www.nbp.pl/kursy/";
 
     private static final Logger logger = Logger.getLogger(DownloaderThread.class);
+    private static final Downloader downloader = new Downloader();                                                      // Shared between runs, so it remembers ETags of downloaded files
 
     public void execute(JobExecutionContext context)
     {
-        downloadFiles();
+        downloadFiles(DEFAULT_BASE_URL, new File("files/import"));
     }
 
 
     /**
-     * This method is used to download actual currencies prices and save them in .xml format.
-     * Executed by DownloaderThread each day at 1:00AM (prices are updated once per day).
+     * This method is used to download actual currencies prices of each table and save them in .xml format.
+     * Executed by DownloaderThread each day at 4:00PM (prices are updated once per day).
      * It also downloads archived prices from current year in .csv format.
+     * Files are downloaded concurrently and only if they changed since last download.
+     * @param baseUrl address of nbp.pl exchange rates directory
+     * @param directory local directory, where files are saved
+     * @return K: downloaded url, V: result of download
      */
-    private static void downloadFiles()
+    public static Map<String, Downloader.Result> downloadFiles(String baseUrl, File directory)
     {
-
-        if(!new File("files").exists())
-            new File("files").mkdir();
-        if(!new File("files/import").exists())
-            new File("files/import").mkdir();
-
-        try
-        {
-            URL url1 = new URL("http://www.nbp.pl/kursy/xml/LastA.xml");
-            FileUtils.copyURLToFile(url1, new File("files/import/LastA.xml"));
-        }
-        catch (MalformedURLException e)
-        {
-            logger.error("Url error!", e);
-        }
-        catch (IOException e)
-        {
-            logger.error("Error writing to file!", e);
-        }
-        try
-        {
-            URL url2 = new URL("http://www.nbp.pl/kursy/xml/LastB.xml");
-            FileUtils.copyURLToFile(url2, new File("files/import/LastB.xml"));
-        }
-        catch (MalformedURLException e)
-        {
-            logger.error("Url error!", e);
-        }
-        catch (IOException e)
-        {
-            logger.error("Error writing to file!", e);
-        }
-        try
-        {
-            URL url2 = new URL("http://www.nbp.pl/kursy/Archiwum/archiwum_tab_a_"+DateTime.now().getYear()+".csv");
-            FileUtils.copyURLToFile(url2, new File("files/import/ArchiveA-"+DateTime.now().getYear()+".csv"));
-        }
-        catch (MalformedURLException e)
-        {
-            logger.error("Url error!", e);
-        }
-        catch (IOException e)
-        {
-            logger.error("Error writing to file!", e);
-        }
-        try
-        {
-            URL url2 = new URL("http://www.nbp.pl/kursy/Archiwum/archiwum_tab_b_"+DateTime.now().getYear()+".csv");
-            FileUtils.copyURLToFile(url2, new File("files/import/ArchiveB-"+DateTime.now().getYear()+".csv"));
-        }
-        catch (MalformedURLException e)
-        {
-            logger.error("Url error!", e);
-        }
-        catch (IOException e)
-        {
-            logger.error("Error writing to file!", e);
-        }
+        int year = DateTime.now().getYear();
+        Map<String, File> sources = new LinkedHashMap<>();
+        TableDefinition.TABLES.forEach(table -> sources.put(baseUrl + "xml/" + table.getFileName(), new File(directory, table.getFileName())));
+        sources.put(baseUrl + "Archiwum/archiwum_tab_a_" + year + ".csv", new File(directory, "ArchiveA-" + year + ".csv"));
+        sources.put(baseUrl + "Archiwum/archiwum_tab_b_" + year + ".csv", new File(directory, "ArchiveB-" + year + ".csv"));
+
+        Map<String, Downloader.Result> results = downloader.downloadAll(sources);
+        logger.info("Downloaded files: " + results);
+        return results;
     }
 }
-
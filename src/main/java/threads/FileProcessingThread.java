@@ -1,282 +1,175 @@
 package threads;
 
+import common.io.FileFingerprintIndex;
+import common.repository.IngestionIndex;
+import common.repository.NamedQueries;
 import main.Global;
-import models.Currency;
-import models.CurrencyPrice;
-import models.xml.PriceTable;
-import models.xml.XMLCurrency;
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVRecord;
+import models.TableDefinition;
 import org.apache.log4j.Logger;
 import org.joda.time.DateTime;
-import org.joda.time.format.DateTimeFormat;
-import org.joda.time.format.DateTimeFormatter;
+import org.quartz.DisallowConcurrentExecution;
 import org.quartz.Job;
 import org.quartz.JobExecutionContext;
 
 import javax.persistence.EntityManager;
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.JAXBException;
-import javax.xml.bind.Unmarshaller;
 import java.io.*;
-import java.util.HashMap;
-import java.util.List;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Map;
 
 /**
  * Created by Iwo Skwierawski on 11.12.17.
  * Thread responsible for checking if source files changed and if they did - process them and save to DB.
  */
+@DisallowConcurrentExecution
 public class FileProcessingThread implements Job
 {
+    /**
+     * Job data key. When set to true, all files are processed, whether they changed or not.
+     */
+    public static final String RESCAN = "rescan";
+    /**
+     * Job data key. When set to true, archives from all years are downloaded and missing prices are saved to DB.
+     */
+    public static final String BACKFILL = "backfill";
 
     private static final Logger logger = Logger.getLogger(FileProcessingThread.class);
-    private static Map<String, PriceTable> tables = new HashMap<>();                                                    // Key: tableName, Value: table matching that name
+    private static final IngestionIndex ingestionIndex = new IngestionIndex();                                          // Days with stored prices, shared by all ingestion tasks
+    private static final TablePipeline pipeline = new TablePipeline(Global.emf, TableDefinition.TABLES, FileProcessingThread::tableSaved, ingestionIndex, Global.priceStore);
+    private static final FileFingerprintIndex fileIndex = new FileFingerprintIndex(Paths.get("files/import"));
+    private static boolean storeSynchronized;                                                                           // Store could miss prices saved in previous run
 
     public void execute(JobExecutionContext context)
     {
-        processDownloadedFiles();
-    }
-
-    /**
-     * This method is executed each minute to check if there are new files to process.
-     * If there are, it converts them to objects and saves to DB, then deleting outdated files.
-     * Process downloaded archive file if this is first run and there are no entries in DB
-     */
-    private static void processDownloadedFiles()
-    {
-        File fileToProcess = new File("files/import/LastA.xml");
-        if(!fileToProcess.exists())
-            return;
-        Map<String, models.Currency> currencyMap = new HashMap<>();                                                     // Map containing all currencies, accessed by their unique code
-        Global.currencyService.getAllTables().stream().forEach(table ->
-        {
-            tables.put(table.getTableName(), table);
-            table.getCurrencies().stream().forEach(currency -> currencyMap.put(currency.getCurrencyCode(), currency));
-        });
-        EntityManager em = Global.em;
-        if(tables.size() == 0)
+        if(!storeSynchronized)
+            storeSynchronized = synchronizeStore();
+        if(context.getMergedJobDataMap().getBoolean(BACKFILL))
         {
-            em.getTransaction().begin();
-            File archive = new File("files/import/ArchiveA-"+DateTime.now().getYear()+".csv");
-            if(archive.exists())
-            {
-                PriceTable tableA = new PriceTable();
-                tableA.setTableName("A");
-                processArchiveFile(archive, tableA).save(em);
-            }
-            archive = new File("files/import/ArchiveB-"+DateTime.now().getYear()+".csv");
-            if(archive.exists())
+            if(backfill())
             {
-                PriceTable tableB = new PriceTable();
-                tableB.setTableName("B");
-                processArchiveFile(archive, tableB).save(em);
+                synchronizeStore();
+                allTablesSaved();
             }
-            em.getTransaction().commit();
-            Global.app.connectDataSources();
             return;
         }
-        DateTimeFormatter formatter = DateTimeFormat.forPattern("yyyy-MM-dd");
         try
         {
-            InputStream inputStream = new FileInputStream("files/import/LastA.xml");
-            Reader reader = new InputStreamReader(inputStream, "ISO-8859-2");
-            JAXBContext context = JAXBContext.newInstance(PriceTable.class);
-            Unmarshaller un = context.createUnmarshaller();
-
-            PriceTable tableA = (PriceTable)un.unmarshal(reader);
-            if(!tables.containsKey("A") || !tableA.getPublicationDate().equals(tables.get("A").getPublicationDate()))
-            {
-                em.getTransaction().begin();
-                List<XMLCurrency> currencies = tableA.getXmlCurrencies();
-                currencies.stream().forEach(currency -> {                                                                   // Basing on processed xml file, it creates new currency, or updates existing with new values.
-                    models.Currency currencyToUpdate;
-                    if(currencyMap.containsKey(currency.getCurrencyCode()))
-                        currencyToUpdate = currencyMap.get(currency.getCurrencyCode());
-                    else
-                        currencyToUpdate = new models.Currency(currency);
-                    CurrencyPrice newPrice = new CurrencyPrice(currency.getAvgPrice());
-                    DateTime priceForDate = formatter.parseDateTime(tableA.getPublicationDate());
-                    newPrice.setDate(priceForDate);
-                    currencyToUpdate.getAvgPrices().add(newPrice);
-                    if(!tables.containsKey("A"))
-                    {
-                        tableA.getCurrencies().add(currencyToUpdate);
-                    }
-                });
-                if(!tables.containsKey("A"))
-                {
-                    tableA.setTableName("A");
-                    tableA.save(em);
-                }
-                else
-                {
-                    PriceTable table = tables.get("A");
-                    table.setPublicationDate(tableA.getPublicationDate());
-                    table.save(em);
-                }
-            }
-
+            if(context.getMergedJobDataMap().getBoolean(RESCAN))
+                fileIndex.clear();
+            Map<Path, FileFingerprintIndex.Fingerprint> changes = fileIndex.scan();
+            if(changes.isEmpty())                                                                                       // Nothing changed since last run, DB is not touched at all
+                return;
+            logger.info("Changed files: " + changes.keySet());
+            if(processDownloadedFiles())
+                fileIndex.commit(changes);
         }
-        catch (JAXBException e)
-        {
-            logger.error("Couldn't convert xml to object.", e);
-        }
-
         catch (IOException e)
         {
-            logger.error("Error while processing file!", e);
+            logger.error("Error while checking files for changes!", e);
         }
-        fileToProcess = new File("files/import/LastB.xml");
-        if(!fileToProcess.exists())
-            return;
-        try
-        {
-            InputStream inputStream = new FileInputStream("files/import/LastB.xml");
-            Reader reader = new InputStreamReader(inputStream, "ISO-8859-2");
-            JAXBContext context = JAXBContext.newInstance(PriceTable.class);
-            Unmarshaller un = context.createUnmarshaller();
+    }
 
-            PriceTable tableB = (PriceTable)un.unmarshal(reader);
-            if(!tables.containsKey("B") || !tableB.getPublicationDate().equals(tables.get("B").getPublicationDate())) {
-                if(!em.getTransaction().isActive())
-                    em.getTransaction().begin();
-                List<XMLCurrency> currencies = tableB.getXmlCurrencies();
-                currencies.stream().forEach(currency -> {
-                    models.Currency currencyToUpdate;
-                    if (currencyMap.containsKey(currency.getCurrencyCode()))
-                        currencyToUpdate = currencyMap.get(currency.getCurrencyCode());
-                    else
-                        currencyToUpdate = new models.Currency(currency);
-                    CurrencyPrice newPrice = new CurrencyPrice(currency.getAvgPrice());
-                    DateTime priceForDate = formatter.parseDateTime(tableB.getPublicationDate());
-                    newPrice.setDate(priceForDate);
-                    currencyToUpdate.getAvgPrices().add(newPrice);
-                    if(!tables.containsKey("B"))
-                    {
-                        tableB.getCurrencies().add(currencyToUpdate);
-                    }
-                });
-                if(!tables.containsKey("B"))
-                {
-                    tableB.setTableName("B");
-                    tableB.save(em);
-                }
-                else
-                {
-                    PriceTable table = tables.get("B");
-                    table.setPublicationDate(tableB.getPublicationDate());
-                    table.save(em);
-                }
-            }
-        }
-        catch (JAXBException e)
+    /**
+     * This method is executed each time files in import directory change (or on manual rescan).
+     * It converts them to objects and saves to DB. Each table is processed by TablePipeline, in its own transaction.
+     * Process downloaded archive files if this is first run and there are no entries in DB. Latest publications are processed
+     * after them, because archives don't contain table C, nor the latest days of current year.
+     * @return were files processed without errors? T/F
+     */
+    private static boolean processDownloadedFiles()
+    {
+        boolean firstRun = isFirstRun();
+        boolean backfilled = !firstRun || backfill();                                                                   // DB is filled with whole available history
+        Map<String, Boolean> results = pipeline.processAll(new File("files/import"));
+        synchronizeStore();                                                                                             // New currencies and prices, that couldn't be appended
+        if(firstRun)
+            allTablesSaved();
+        return backfilled && !results.containsValue(false);
+    }
+
+    /**
+     * @return are there no tables stored in DB? T/F
+     */
+    private static boolean isFirstRun()
+    {
+        return Global.unitOfWork.read(em -> (Long) em.createNamedQuery(NamedQueries.TABLE_COUNT).getSingleResult() == 0);
+    }
+
+    /**
+     * Executed after first run of program (or on demand), fills DB with archived data from the past.
+     * Uses its own Entity Manager, which is closed afterwards.
+     * @return was backfill finished? T/F
+     */
+    private static boolean backfill()
+    {
+        EntityManager em = Global.emf.createEntityManager();
+        try
         {
-            logger.error("Couldn't convert xml to object.", e);
+            int added = new ArchiveBackfill().run(em, ingestionIndex, ArchiveBackfill.FIRST_YEAR, DateTime.now().getYear());
+            logger.info("Backfill saved " + added + " archived prices to DB.");
+            return true;
         }
-        catch (IOException e)
+        catch (InterruptedException e)
         {
-            logger.error("Error while processing file!", e);
+            Thread.currentThread().interrupt();
+            return false;
         }
-        if(em.getTransaction().isActive())
+        finally
         {
-            try
-            {
-                em.getTransaction().commit();
-                Global.app.connectDataSources();
-            }
-            catch (RuntimeException e)
-            {
-                logger.error("Error while commiting transaction!", e);
-            }
-            logger.info("Saved new prices to DB.");
+            em.close();
         }
     }
 
     /**
-     * Executed after first run of program, fills DB with archived data from the past.
-     * @param archive archive file in .csv format, downloaded from npb.pl
-     * @param table table to which newly created data will be saved.
-     * @return table filled with data, ready to be saved.
+     * Brings price store up to date with DB. Job is never executed concurrently, so no prices are saved meanwhile.
+     * When store is rewritten, market data is refreshed, so its snapshot maps histories from new store file.
+     * @return was store synchronized? T/F
      */
-    private static PriceTable processArchiveFile(File archive, PriceTable table)
+    private static boolean synchronizeStore()
     {
         try
         {
-            InputStream inputStream = new FileInputStream(archive);
-            Reader in = new InputStreamReader(inputStream, "Windows-1250");
-            Iterable<CSVRecord> records = CSVFormat.DEFAULT.withDelimiter(';').parse(in);
-            int i = 0;
-            Map<Integer, Currency> csvCurrencyMap = new HashMap<>();                                                    // Map containing currency and corresponding column in csv file
-            DateTimeFormatter formatter = DateTimeFormat.forPattern("yyyyMMdd");
-
+            if(Global.currencyService.synchronizePriceStore())
+                refreshData();
+            return true;
+        }
+        catch (IOException | RuntimeException e)
+        {
+            logger.error("Error while synchronizing price store with DB!", e);
+            return false;
+        }
+    }
 
-            for(CSVRecord record : records)
-            {
-                int j;
-                if(i == 0)                                                                                              // First line is a header containing converter and currency code
-                {
-                    j = 1;
-                    while(j < record.size() - 3)
-                    {
-                        String currencyString = record.get(j);
-                        if(currencyString == null || currencyString.isEmpty())
-                            break;
+    /**
+     * Evicts cached data of table, that new prices were saved for, and reloads data shown in application
+     */
+    private static void tableSaved(String tableName)
+    {
+        Global.currencyService.evictTable(tableName);
+        refreshData();
+    }
 
-                        String[] splittedString = currencyString.split("(?<=\\D)(?=\\d)|(?<=\\d)(?=\\D)");
-                        Currency newCurrency = new Currency();
-                        newCurrency.setConverter(Double.parseDouble(splittedString[0]));
-                        newCurrency.setCurrencyCode(splittedString[1]);
-                        table.getCurrencies().add(newCurrency);
-                        csvCurrencyMap.put(j, newCurrency);
-                        j++;
-                    }
-                }
-                else if(i == 1)                                                                                         // Second line is a header containing currency name
-                {
-                    j = 1;
-                    while(true)
-                    {
-                        String currencyName = record.get(j);
-                        if(currencyName == null || currencyName.isEmpty())
-                            break;
-                        Currency matchedCurrency = csvCurrencyMap.get(j);
-                        matchedCurrency.setName(currencyName);
-                        j++;
-                    }
-                }
-                else
-                {
-                    if(!record.get(0).startsWith(""+DateTime.now().getYear()))                                          // It means we reached document's footer
-                        break;
-                    j = 1;
-                    DateTime publicationDate = formatter.parseDateTime(record.get(0));
-                    String plainDate = publicationDate.getYear() + "-" + publicationDate.getMonthOfYear() + "-" + publicationDate.getDayOfMonth();
-                    table.setPublicationDate(plainDate);
-                    while(j < record.size() - 3)
-                    {
-                        String currencyPriceString = record.get(j);
-                        if(currencyPriceString == null || currencyPriceString.isEmpty())
-                            break;
-                        Currency matchedCurrency = csvCurrencyMap.get(j);
-                        CurrencyPrice currencyPrice = new CurrencyPrice(currencyPriceString);
-                        currencyPrice.setDate(publicationDate);
-                        matchedCurrency.getAvgPrices().add(currencyPrice);
-                        j++;
-                    }
+    /**
+     * Evicts all cached data, after prices of many tables were saved (eg. by backfill), and reloads data shown in application
+     */
+    private static void allTablesSaved()
+    {
+        Global.currencyService.evictAll();
+        refreshData();
+    }
 
-                }
-                i++;
-            }
-        }
-        catch (FileNotFoundException e)
+    /**
+     * Builds and publishes new snapshot of market data, after new prices were saved. Application shows it, when it's published.
+     */
+    private static void refreshData()
+    {
+        try
         {
-            logger.error("File not found!", e);
+            Global.marketData.refresh();
         }
-        catch (IOException e)
+        catch (RuntimeException e)
         {
-            logger.error("Error while processing archive file!", e);
+            logger.error("Error while refreshing market data!", e);
         }
-        return table;
     }
 }
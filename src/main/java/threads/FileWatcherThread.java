@@ -0,0 +1,75 @@
+package threads;
+
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thread watching import directory for changes.
+ * Burst of events (eg. file being written by DownloaderThread) is collapsed into single notification,
+ * sent after directory stays quiet for QUIET_PERIOD milliseconds.
+ */
+public class FileWatcherThread extends Thread
+{
+    private static final Logger logger = Logger.getLogger(FileWatcherThread.class);
+    private static final long QUIET_PERIOD = 2000;
+
+    private final Path directory;
+    private final Runnable onChange;
+
+    /**
+     * @param directory watched directory, created if it doesn't exist
+     * @param onChange action executed after files in directory changed
+     */
+    public FileWatcherThread(Path directory, Runnable onChange)
+    {
+        super("file-watcher");
+        this.directory = directory;
+        this.onChange = onChange;
+        setDaemon(true);
+    }
+
+    @Override
+    public void run()
+    {
+        try(WatchService watchService = FileSystems.getDefault().newWatchService())
+        {
+            Files.createDirectories(directory);
+            directory.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+            logger.info("Watching " + directory.toAbsolutePath() + " for changes");
+            while(!isInterrupted())
+            {
+                WatchKey key = watchService.take();
+                while(key != null)                                                                                      // Waits until directory stays quiet
+                {
+                    key.pollEvents();
+                    if(!key.reset())
+                    {
+                        logger.error("Directory " + directory + " is no longer accessible, stopped watching it.");
+                        return;
+                    }
+                    key = watchService.poll(QUIET_PERIOD, TimeUnit.MILLISECONDS);
+                }
+                onChange.run();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (IOException e)
+        {
+            logger.error("Error while watching directory " + directory, e);
+        }
+    }
+}
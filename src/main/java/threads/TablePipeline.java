@@ -0,0 +1,185 @@
+package threads;
+
+import common.io.PriceStore;
+import common.parsers.PriceTableXmlParser;
+import common.repository.IngestionIndex;
+import common.repository.PricePartitions;
+import common.repository.PriceRowWriter;
+import common.utils.EpochDays;
+import models.CurrencyPrice;
+import models.PriceSeries;
+import models.TableDefinition;
+import models.xml.XMLCurrency;
+import models.xml.XMLPriceTable;
+import org.apache.log4j.Logger;
+import org.joda.time.DateTime;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.xml.stream.XMLStreamException;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Processes latest publications of price tables (LastA.xml, LastB.xml, LastC.xml ...).
+ * Each table is processed concurrently, with its own EntityManager and transaction,
+ * so slow or broken file of one table doesn't hold up the others.
+ */
+public class TablePipeline
+{
+    private static final Logger logger = Logger.getLogger(TablePipeline.class);
+    private static final DateTimeFormatter formatter = DateTimeFormat.forPattern("yyyy-MM-dd");
+
+    private final EntityManagerFactory emf;
+    private final List<TableDefinition> definitions;
+    private final Consumer<String> onTableSaved;
+    private final IngestionIndex index;
+    private final PriceStore store;
+    private final PriceTableXmlParser parser = new PriceTableXmlParser();
+    private final ExecutorService executor;
+
+    /**
+     * @param emf factory of EntityManagers, one is created for each processed table
+     * @param definitions processed tables
+     * @param onTableSaved receives name of table right after its new prices are committed
+     * @param index days with already stored prices, shared with other ingestion tasks
+     * @param store price store, which committed prices are appended to
+     */
+    public TablePipeline(EntityManagerFactory emf, List<TableDefinition> definitions, Consumer<String> onTableSaved, IngestionIndex index, PriceStore store)
+    {
+        this.emf = emf;
+        this.definitions = definitions;
+        this.onTableSaved = onTableSaved;
+        this.index = index;
+        this.store = store;
+        this.executor = Executors.newFixedThreadPool(definitions.size(), runnable -> {
+            Thread thread = new Thread(runnable, "table-pipeline");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Processes all tables, which have their file in provided directory and waits until they are finished.
+     * @param directory directory containing downloaded files
+     * @return K: table name, V: was table processed without errors? T/F
+     */
+    public Map<String, Boolean> processAll(File directory)
+    {
+        Map<String, Future<Boolean>> futures = new HashMap<>();
+        for(TableDefinition definition : definitions)
+        {
+            File file = new File(directory, definition.getFileName());
+            if(file.exists())
+                futures.put(definition.getName(), executor.submit(() -> processTable(definition, file)));
+        }
+        Map<String, Boolean> results = new HashMap<>();
+        futures.forEach((tableName, future) -> {
+            try
+            {
+                results.put(tableName, future.get());
+            }
+            catch (ExecutionException e)
+            {
+                logger.error("Error while processing table " + tableName, e.getCause());
+                results.put(tableName, false);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                results.put(tableName, false);
+            }
+        });
+        return results;
+    }
+
+    /**
+     * Saves new prices from latest publication of single table, in its own transaction.
+     * Basing on processed xml file, it creates new currencies, or appends new prices to existing ones.
+     * Stored tables and currencies are looked up in ingestion index and prices are appended as plain rows,
+     * so stored history is never loaded. Prices for days, that are already stored, are skipped.
+     * Committed prices are appended to price store.
+     * @return was table processed without errors? T/F
+     */
+    public boolean processTable(TableDefinition definition, File file)
+    {
+        EntityManager em = emf.createEntityManager();
+        try
+        {
+            IngestionIndex.TableEntry table = index.getTable(em, definition.getName());
+            XMLPriceTable xmlTable = parser.parse(file, table.getPublicationDate());
+            if(xmlTable == null)                                                                                        // Parser returns null, when publication is already stored
+                return true;
+
+            DateTime priceForDate = formatter.parseDateTime(xmlTable.getPublicationDate());
+            PricePartitions.ensureYears(em, priceForDate.getYear(), priceForDate.getYear());
+            em.getTransaction().begin();
+            PriceRowWriter writer = new PriceRowWriter(em);
+            if(table.getId() == null)
+                table.setId(writer.insertTable(definition.getName(), xmlTable.getPublicationDate()));
+            int day = EpochDays.fromDateTime(priceForDate);
+            int added = 0;
+            int skipped = 0;
+            Map<Long, PriceSeries> savedPrices = new HashMap<>();                                                       // K: currency id
+            for(XMLCurrency xmlCurrency : xmlTable.getCurrencies())
+            {
+                IngestionIndex.CurrencyEntry currency = table.getCurrency(xmlCurrency.getCurrencyCode());
+                if(currency == null)
+                {
+                    Long currencyId = writer.insertCurrency(table.getId(), xmlCurrency.getCurrencyCode(), xmlCurrency.getName(), xmlCurrency.getConverter());
+                    currency = table.addCurrency(xmlCurrency.getCurrencyCode(), currencyId, xmlCurrency.getConverter());
+                }
+                if(!currency.addDay(em, day))
+                {
+                    skipped++;
+                    continue;
+                }
+                CurrencyPrice price = definition.getPriceKind().createPrice(xmlCurrency, day);
+                if(!currency.getConverter().equals(xmlCurrency.getConverter()))                                         // Prices are stored in units of currency's converter
+                    price.scale((float) (currency.getConverter() / xmlCurrency.getConverter()));
+                writer.insertPrice(currency.getId(), price);
+                if(price.getPrice() != null)
+                    savedPrices.put(currency.getId(), PriceSeries.wrap(new int[]{day}, new float[]{price.getPrice()}));
+                added++;
+            }
+            writer.updatePublicationDate(table.getId(), xmlTable.getPublicationDate());
+            em.getTransaction().commit();
+            table.setPublicationDate(xmlTable.getPublicationDate());
+            store.append(savedPrices);
+            logger.info("Saved " + added + " prices of table " + definition.getName() + " from " + xmlTable.getPublicationDate() + " to DB, "
+                    + skipped + " already stored prices skipped.");
+            onTableSaved.accept(definition.getName());
+            return true;
+        }
+        catch (XMLStreamException e)
+        {
+            logger.error("Couldn't convert xml to object.", e);
+        }
+        catch (IOException e)
+        {
+            logger.error("Error while processing file!", e);
+        }
+        catch (RuntimeException e)
+        {
+            logger.error("Error while saving table " + definition.getName() + "!", e);
+            index.invalidate(definition.getName());                                                                     // Index may contain days of rolled back prices
+        }
+        finally
+        {
+            if(em.getTransaction().isActive())
+                em.getTransaction().rollback();
+            em.close();
+        }
+        return false;
+    }
+}
@@ -0,0 +1,98 @@
+package common.cache;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks eviction order of {@link LruCache} and values loaded while cache is evicted.
+ */
+public class LruCacheTest
+{
+    private final LruCache<List<Object>, String> cache = new LruCache<>("prices", 2);                                   // K: table name, currency code
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    public void leastRecentlyUsedEntryIsEvicted()
+    {
+        get("A", "USD");
+        get("A", "EUR");
+        get("A", "USD");                                                                                                // EUR is the least recently used now
+        get("A", "CHF");
+
+        assertEquals(3, loads.get());
+        get("A", "USD");
+        get("A", "CHF");
+        assertEquals(3, loads.get());
+        get("A", "EUR");
+        assertEquals(4, loads.get());
+        CacheStatistics statistics = cache.getStatistics();
+        assertEquals(2, statistics.getSize());
+        assertEquals(2, statistics.getEvictions());
+    }
+
+    @Test
+    public void valueEvictedWhileLoadedIsNotCached()
+    {
+        cache.get(key("C", "USD"), key -> {
+            cache.evict(evicted -> evicted.get(0).equals("C"));
+            return load(key);
+        });
+
+        get("C", "USD");
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void valueOfOtherTableIsCachedDespiteEviction()
+    {
+        cache.get(key("A", "USD"), key -> {
+            cache.evict(evicted -> evicted.get(0).equals("C"));
+            return load(key);
+        });
+
+        get("A", "USD");
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void valueLoadedWhileCacheWasClearedIsNotCached()
+    {
+        cache.get(key("A", "USD"), key -> {
+            cache.clear();
+            return load(key);
+        });
+
+        get("A", "USD");
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void nullIsNotCached()
+    {
+        cache.get(key("A", "USD"), key -> null);
+
+        get("A", "USD");
+        assertEquals(1, loads.get());
+    }
+
+    private String get(String table, String currencyCode)
+    {
+        return cache.get(key(table, currencyCode), this::load);
+    }
+
+    private String load(List<Object> key)
+    {
+        loads.incrementAndGet();
+        return key.toString();
+    }
+
+    private static List<Object> key(String table, String currencyCode)
+    {
+        return Arrays.asList(table, currencyCode);
+    }
+}
@@ -0,0 +1,152 @@
+package common.io;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Checks conditional requests, compression and retries of {@link Downloader} against local stub http server.
+ */
+public class DownloaderTest
+{
+    private static final String PAYLOAD = "<tabela_kursow>A</tabela_kursow>";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final List<String> eTagsSent = new ArrayList<>();                                                           // If-None-Match header of each request, null if it wasn't sent
+    private final Downloader downloader = new Downloader(1, 5000, 4, 1);
+
+    @Before
+    public void startServer() throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.start();
+    }
+
+    @After
+    public void stopServer()
+    {
+        server.stop(0);
+    }
+
+    @Test
+    public void unchangedPayloadIsNotDownloadedAgain() throws IOException
+    {
+        server.createContext("/table.xml", exchange -> {
+            String eTag = exchange.getRequestHeaders().getFirst("If-None-Match");
+            eTagsSent.add(eTag);
+            if("\"v1\"".equals(eTag))
+            {
+                respond(exchange, 304, null);
+                return;
+            }
+            exchange.getResponseHeaders().add("ETag", "\"v1\"");
+            respond(exchange, 200, PAYLOAD.getBytes(StandardCharsets.UTF_8));
+        });
+        File target = new File(folder.getRoot(), "table.xml");
+
+        assertEquals(Downloader.Result.DOWNLOADED, downloader.download(url("/table.xml"), target));
+        assertEquals(Downloader.Result.NOT_MODIFIED, downloader.download(url("/table.xml"), target));
+
+        assertEquals(2, eTagsSent.size());
+        assertEquals(null, eTagsSent.get(0));
+        assertEquals("\"v1\"", eTagsSent.get(1));
+        assertEquals(PAYLOAD, read(target));
+    }
+
+    @Test
+    public void gzipPayloadIsSavedDecompressed() throws IOException
+    {
+        server.createContext("/table.xml", exchange -> {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try(GZIPOutputStream gzip = new GZIPOutputStream(compressed))
+            {
+                gzip.write(PAYLOAD.getBytes(StandardCharsets.UTF_8));
+            }
+            exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            respond(exchange, 200, compressed.toByteArray());
+        });
+        File target = new File(folder.getRoot(), "table.xml");
+
+        assertEquals(Downloader.Result.DOWNLOADED, downloader.download(url("/table.xml"), target));
+        assertEquals(PAYLOAD, read(target));
+    }
+
+    @Test
+    public void serverErrorIsRetried() throws IOException
+    {
+        server.createContext("/table.xml", exchange -> {
+            if(requests.incrementAndGet() < 3)
+                respond(exchange, 503, null);
+            else
+                respond(exchange, 200, PAYLOAD.getBytes(StandardCharsets.UTF_8));
+        });
+        File target = new File(folder.getRoot(), "table.xml");
+
+        assertEquals(Downloader.Result.DOWNLOADED, downloader.download(url("/table.xml"), target));
+        assertEquals(3, requests.get());
+        assertEquals(PAYLOAD, read(target));
+    }
+
+    @Test
+    public void missingFileIsNotRetried()
+    {
+        server.createContext("/table.xml", exchange -> {
+            requests.incrementAndGet();
+            respond(exchange, 404, null);
+        });
+        File target = new File(folder.getRoot(), "table.xml");
+
+        assertEquals(Downloader.Result.FAILED, downloader.download(url("/table.xml"), target));
+        assertEquals(1, requests.get());
+        assertFalse(target.exists());
+    }
+
+    private String url(String path)
+    {
+        return "http://localhost:" + server.getAddress().getPort() + path;
+    }
+
+    private static String read(File file) throws IOException
+    {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param body response body, null if response has none
+     */
+    private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException
+    {
+        exchange.sendResponseHeaders(status, body == null ? -1 : body.length);
+        if(body != null)
+        {
+            try(OutputStream output = exchange.getResponseBody())
+            {
+                output.write(body);
+            }
+        }
+        exchange.close();
+    }
+}
@@ -0,0 +1,180 @@
+package common.io;
+
+import models.PriceSeries;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Writes, appends and reopens price store in temporary directory, including files left by interrupted rewrites.
+ */
+public class PriceStoreTest
+{
+    private static final Long DOLLAR = 1L;
+    private static final Long EURO = 2L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void appendedPricesSurviveReopen() throws IOException
+    {
+        PriceStore store = PriceStore.open(directory());
+        store.rewrite(Collections.singletonMap(DOLLAR, series(10, 11, 12)));
+        store.append(Collections.singletonMap(DOLLAR, series(13, 14)));
+
+        PriceSeries reopened = PriceStore.open(directory()).getSeries(DOLLAR);
+
+        assertDays(reopened, 10, 11, 12, 13, 14);
+        assertEquals(14.0f, reopened.getLatestPrice(), 0);
+    }
+
+    @Test
+    public void newestRewriteIsMappedAfterReopen() throws IOException
+    {
+        PriceStore store = PriceStore.open(directory());
+        store.rewrite(Collections.singletonMap(DOLLAR, series(10, 11)));
+        Map<Long, PriceSeries> prices = new HashMap<>();
+        prices.put(DOLLAR, series(10, 11, 12));
+        prices.put(EURO, series(11));
+        store.rewrite(prices);
+
+        PriceStore reopened = PriceStore.open(directory());
+
+        assertEquals(2, reopened.size());
+        assertDays(reopened.getSeries(DOLLAR), 10, 11, 12);
+        assertDays(reopened.getSeries(EURO), 11);
+        assertEquals(Collections.singletonList("prices-2.bin"), files());                                               // Older file is deleted
+        reopened.rewrite(Collections.singletonMap(EURO, series(11, 12)));
+        assertEquals(Arrays.asList("prices-2.bin", "prices-3.bin"), files());                                           // Versions continue after reopen
+    }
+
+    @Test
+    public void fileWithoutMagicIsSkipped() throws IOException
+    {
+        PriceStore store = PriceStore.open(directory());
+        store.rewrite(Collections.singletonMap(DOLLAR, series(10, 11)));
+        Path interrupted = directory().resolve("prices-2.bin");                                                         // Rewrite interrupted before magic was written
+        Files.copy(directory().resolve("prices-1.bin"), interrupted);
+        try(RandomAccessFile file = new RandomAccessFile(interrupted.toFile(), "rw"))
+        {
+            file.writeInt(0);
+        }
+
+        PriceStore reopened = PriceStore.open(directory());
+
+        assertDays(reopened.getSeries(DOLLAR), 10, 11);
+        assertEquals(Collections.singletonList("prices-1.bin"), files());
+    }
+
+    @Test
+    public void truncatedFileGivesEmptyStore() throws IOException
+    {
+        PriceStore.open(directory()).rewrite(Collections.singletonMap(DOLLAR, series(10, 11)));
+        try(RandomAccessFile file = new RandomAccessFile(directory().resolve("prices-1.bin").toFile(), "rw"))
+        {
+            file.setLength(10);                                                                                         // Shorter than header
+        }
+
+        PriceStore reopened = PriceStore.open(directory());
+
+        assertEquals(0, reopened.size());
+        assertNull(reopened.getSeries(DOLLAR));
+        assertEquals(Collections.emptyList(), files());
+    }
+
+    @Test
+    public void fileCutInRecordsGivesEmptyStore() throws IOException
+    {
+        PriceStore.open(directory()).rewrite(Collections.singletonMap(DOLLAR, series(10, 11)));
+        try(RandomAccessFile file = new RandomAccessFile(directory().resolve("prices-1.bin").toFile(), "rw"))
+        {
+            file.setLength(48);                                                                                         // Header and directory are whole, records aren't
+        }
+
+        assertEquals(0, PriceStore.open(directory()).size());
+        assertEquals(Collections.emptyList(), files());
+    }
+
+    @Test
+    public void pricesThatCantBeAppendedMakeSeriesStale() throws IOException
+    {
+        PriceStore store = PriceStore.open(directory());
+        Map<Long, PriceSeries> prices = new HashMap<>();
+        prices.put(DOLLAR, series(10, 11, 12));
+        prices.put(EURO, series(10));
+        store.rewrite(prices);
+        Map<Long, PriceSeries> appended = new HashMap<>();
+        appended.put(DOLLAR, series(11));                                                                               // Not newer than stored ones
+        appended.put(EURO, series(11));
+        appended.put(3L, series(11));                                                                                   // Currency missing in store
+
+        store.append(appended);
+
+        assertNull(store.getSeries(DOLLAR));
+        assertNull(store.getSeries(3L));
+        assertDays(store.getSeries(EURO), 10, 11);
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    public void missingDirectoryGivesEmptyStore()
+    {
+        PriceStore store = PriceStore.open(folder.getRoot().toPath().resolve("missing"));
+
+        assertEquals(0, store.size());
+        assertNull(store.getSeries(DOLLAR));
+    }
+
+    private Path directory()
+    {
+        return folder.getRoot().toPath();
+    }
+
+    /**
+     * @return names of store files, sorted
+     */
+    private List<String> files() throws IOException
+    {
+        List<String> names = new ArrayList<>();
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(directory(), "prices-*.bin"))
+        {
+            files.forEach(file -> names.add(file.getFileName().toString()));
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    /**
+     * @return series with provided days, price of each day is equal to its number
+     */
+    private static PriceSeries series(int... days)
+    {
+        float[] prices = new float[days.length];
+        for(int i = 0; i < days.length; i++)
+            prices[i] = days[i];
+        return PriceSeries.wrap(days, prices);
+    }
+
+    private static void assertDays(PriceSeries series, int... days)
+    {
+        assertEquals(days.length, series.size());
+        for(int i = 0; i < days.length; i++)
+            assertEquals(days[i], series.getDay(i));
+    }
+}
@@ -0,0 +1,109 @@
+package common.parsers;
+
+import common.utils.EpochDays;
+import models.csv.CSVArchive;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Parses archives written like the ones published by nbp.pl: Windows-1250 encoding, CRLF line endings,
+ * two header lines and footer separated with empty line.
+ */
+public class ArchiveCsvParserTest
+{
+    private static final Charset CHARSET = Charset.forName("Windows-1250");
+    private static final String ARCHIVE = "data;1THB;1USD;100HUF;1XDR;nr tabeli;pe\u0142ny numer tabeli\r\n" +
+            ";bat (Tajlandia);dolar ameryka\u0144ski;forint (W\u0119gry);SDR (MFW);;\r\n" +
+            "20210104;0,1253;3,7584;1,2647;5,4156;1;001/A/NBP/2021\r\n" +
+            "20210105;0,1240;3,7091;;5,3808;2;002/A/NBP/2021\r\n" +                                                     // Forint wasn't published that day
+            "20210107;0,1237;3,6998\r\n" +                                                                              // Line cut after dollar
+            "\r\n" +
+            "kod ISO;THB;USD;HUF;XDR;;\r\n" +
+            "nazwa waluty;bat (Tajlandia);dolar ameryka\u0144ski;forint (W\u0119gry);SDR (MFW);;\r\n" +
+            "liczba jednostek;1;1;100;1;;\r\n";
+
+    private final ArchiveCsvParser parser = new ArchiveCsvParser();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void headersGiveCurrenciesWithConverters() throws IOException
+    {
+        CSVArchive archive = parse(ARCHIVE);
+
+        assertEquals("A", archive.getTableName());
+        assertEquals(4, archive.getColumnCount());
+        assertEquals("HUF", archive.getCurrencyCode(2));
+        assertEquals(100.0, archive.getConverter(2), 0);
+        assertEquals(1.0, archive.getConverter(1), 0);
+        assertEquals("forint (W\u0119gry)", archive.getName(2));                                                        // Decoded from Windows-1250
+        assertEquals("dolar ameryka\u0144ski", archive.getName(1));
+    }
+
+    @Test
+    public void footerIsNotParsedAsPublications() throws IOException
+    {
+        CSVArchive archive = parse(ARCHIVE);
+
+        assertEquals(3, archive.getRowCount());
+        assertEquals(EpochDays.of(2021, 1, 4), archive.getFirstDay());
+        assertEquals(EpochDays.of(2021, 1, 7), archive.getDay(2));
+    }
+
+    @Test
+    public void missingPricesAreNaN() throws IOException
+    {
+        CSVArchive archive = parse(ARCHIVE);
+
+        assertEquals(1.2647f, archive.getPrice(2, 0), 0);
+        assertTrue(Float.isNaN(archive.getPrice(2, 1)));                                                                // Empty cell
+        assertEquals(5.3808f, archive.getPrice(3, 1), 0);
+        assertEquals(3.6998f, archive.getPrice(1, 2), 0);
+        assertTrue(Float.isNaN(archive.getPrice(2, 2)));                                                                // Cells missing at the end of line
+        assertTrue(Float.isNaN(archive.getPrice(3, 2)));
+    }
+
+    @Test
+    public void bufferIsParsedFromItsPosition()
+    {
+        byte[] bytes = ("garbage\n" + ARCHIVE).getBytes(CHARSET);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.position("garbage\n".length());
+
+        CSVArchive archive = parser.parse(buffer, "A");
+
+        assertEquals(4, archive.getColumnCount());
+        assertEquals(3, archive.getRowCount());
+    }
+
+    @Test
+    public void archiveWithoutPublicationsIsEmpty() throws IOException
+    {
+        CSVArchive archive = parse("data;1AFN;nr tabeli;pe\u0142ny numer tabeli\r\n;afgani (Afganistan);;\r\n\r\nkod ISO;AFN;;\r\n");
+
+        assertEquals(1, archive.getColumnCount());
+        assertEquals(0, archive.getRowCount());
+        assertEquals(Integer.MAX_VALUE, archive.getFirstDay());
+    }
+
+    /**
+     * Parses provided content from file, written in Windows-1250, like archives downloaded from nbp.pl
+     */
+    private CSVArchive parse(String content) throws IOException
+    {
+        File file = folder.newFile("archiwum_tab_a_2021.csv");
+        Files.write(file.toPath(), content.getBytes(CHARSET));
+        return parser.parse(file, "A");
+    }
+}
@@ -0,0 +1,130 @@
+package common.pipeline;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs small pipelines and checks backpressure, dropped and failed items and finishing after workers died.
+ */
+public class StagedPipelineTest
+{
+    private final ConcurrentLinkedQueue<Integer> results = new ConcurrentLinkedQueue<>();
+
+    @Test(timeout = 10000)
+    public void itemsPassAllStages() throws InterruptedException
+    {
+        StagedPipeline<Integer> pipeline = StagedPipeline
+                .first("double", 2, 2, (Integer item) -> item * 2)
+                .then("increment", 2, 2, (Integer item) -> item + 1)
+                .end("collect", 1, 2, results::add);
+
+        for(int i = 0; i < 100; i++)
+            pipeline.submit(i);
+        pipeline.finish();
+
+        assertEquals(100, results.size());
+        assertEquals(100 * 99 + 100, results.stream().mapToInt(Integer::intValue).sum());
+        for(StageStatistics statistics : pipeline.getStatistics())
+            assertEquals(100, statistics.getProcessed());
+    }
+
+    @Test(timeout = 10000)
+    public void droppedAndFailedItemsAreNotPassedOn() throws InterruptedException
+    {
+        StagedPipeline<Integer> pipeline = StagedPipeline
+                .first("filter", 1, 2, (Integer item) -> item % 2 == 0 ? item : null)                                   // Odd items are dropped
+                .then("check", 1, 2, (Integer item) -> {
+                    if(item % 4 == 0)
+                        throw new IllegalArgumentException("Item " + item);
+                    return item;
+                })
+                .end("collect", 1, 2, results::add);
+
+        for(int i = 0; i < 20; i++)
+            pipeline.submit(i);
+        pipeline.finish();
+
+        assertEquals(5, results.size());
+        for(Integer result : results)
+            assertEquals(2, result % 4);
+        List<StageStatistics> statistics = pipeline.getStatistics();
+        assertEquals(20, statistics.get(0).getProcessed());
+        assertEquals(0, statistics.get(0).getFailed());
+        assertEquals(5, statistics.get(1).getProcessed());
+        assertEquals(5, statistics.get(1).getFailed());
+        assertEquals(5, statistics.get(2).getProcessed());
+    }
+
+    @Test(timeout = 10000)
+    public void fullQueuesBlockSubmit() throws InterruptedException
+    {
+        CountDownLatch release = new CountDownLatch(1);
+        StagedPipeline<Integer> pipeline = StagedPipeline
+                .first("pass", 1, 1, (Integer item) -> item)
+                .end("slow", 1, 1, item -> {
+                    try
+                    {
+                        release.await();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                    results.add(item);
+                });
+        CountDownLatch submitted = new CountDownLatch(1);
+        Thread producer = new Thread(() -> {
+            try
+            {
+                for(int i = 0; i < 10; i++)
+                    pipeline.submit(i);
+                submitted.countDown();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+
+        assertFalse(submitted.await(300, TimeUnit.MILLISECONDS));                                                       // Slow stage holds one item, queues and pass worker hold three
+        assertEquals(1, pipeline.getStatistics().get(0).getQueueDepth());
+        assertEquals(1, pipeline.getStatistics().get(1).getQueueDepth());
+        assertTrue(results.isEmpty());
+
+        release.countDown();
+        assertTrue(submitted.await(5, TimeUnit.SECONDS));
+        pipeline.finish();
+        assertEquals(10, results.size());
+    }
+
+    @Test(timeout = 10000)
+    public void finishReturnsWhenAllWorkersOfStageDied() throws InterruptedException
+    {
+        StagedPipeline<Integer> pipeline = StagedPipeline
+                .first("pass", 2, 1, (Integer item) -> item)
+                .<Integer>then("dying", 1, 1, (Integer item) -> {
+                    throw new AssertionError("Worker dies");                                                            // Errors aren't caught, they kill worker thread
+                })
+                .end("collect", 1, 1, results::add);
+
+        for(int i = 0; i < 20; i++)
+            pipeline.submit(i);
+        pipeline.finish();
+
+        assertTrue(results.isEmpty());
+        List<StageStatistics> statistics = pipeline.getStatistics();
+        assertEquals(20, statistics.get(0).getProcessed());
+        assertEquals(0, statistics.get(1).getProcessed());
+        assertEquals(19, statistics.get(1).getDiscarded());                                                             // The first item died with worker
+        assertEquals(0, statistics.get(1).getQueueDepth());
+    }
+}
@@ -0,0 +1,97 @@
+package common.repository;
+
+import models.CurrencyPrice;
+import org.hibernate.criterion.Order;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Streams prices from embedded PostgreSQL and checks, that stream releases its session and connection.
+ */
+public class HibernateRepositoryTest
+{
+    private static final int PRICES = 250;
+    private static final int FETCH_SIZE = 20;
+
+    private EntityManager em;
+    private Repository<CurrencyPrice> repository;
+
+    @Before
+    public void setUp()
+    {
+        TestDatabase.clear();
+        em = TestDatabase.get().createEntityManager();
+        em.getTransaction().begin();
+        em.createNativeQuery("INSERT INTO price_table (table_name, update_date) VALUES ('A', '2021-01-01')").executeUpdate();
+        em.createNativeQuery("INSERT INTO currency (name, converter, currency_code, table_id) SELECT 'dolar', 1, 'USD', id FROM price_table").executeUpdate();
+        em.createNativeQuery("INSERT INTO price (price, date, currency_id) SELECT 3 + i / 1000.0, DATE '2020-01-01' + i, c.id " +
+                "FROM generate_series(0, ?1 - 1) i, currency c")
+                .setParameter(1, PRICES)
+                .executeUpdate();
+        em.getTransaction().commit();
+        repository = new HibernateRepository<>(CurrencyPrice.class);
+        repository.setEm(em);
+    }
+
+    @After
+    public void tearDown()
+    {
+        em.close();
+    }
+
+    @Test
+    public void streamReadsMoreRowsThanFetchSizeInOrder()
+    {
+        List<Integer> days = new ArrayList<>();
+
+        long count = repository.scroll(Collections.emptyMap(), Order.asc("day"), FETCH_SIZE, price -> days.add(price.getDay()));
+
+        assertEquals(PRICES, count);
+        assertEquals(PRICES, days.size());
+        for(int i = 1; i < days.size(); i++)
+            assertEquals(days.get(i - 1) + 1, (int) days.get(i));
+    }
+
+    @Test
+    public void closedStreamReleasesSession()
+    {
+        try(Stream<CurrencyPrice> prices = repository.stream(Collections.emptyMap(), Order.asc("day"), FETCH_SIZE))
+        {
+            Iterator<CurrencyPrice> iterator = prices.iterator();
+            for(int i = 0; i < FETCH_SIZE + 5; i++)                                                                     // Stops in the middle of second fetch
+                iterator.next();
+            assertTrue(openTransactions() > 0);                                                                         // Cursor is kept open by read transaction
+        }
+
+        assertEquals(0, openTransactions());
+    }
+
+    @Test
+    public void streamIsRestrictedByReadOnlyColumn()
+    {
+        Long currencyId = ((Number) em.createNativeQuery("SELECT id FROM currency").getSingleResult()).longValue();
+
+        assertEquals(PRICES, repository.scroll(Collections.singletonMap("currencyId", currencyId), null, FETCH_SIZE, price -> {}));
+        assertEquals(0, repository.scroll(Collections.singletonMap("currencyId", currencyId + 1), null, FETCH_SIZE, price -> {}));
+    }
+
+    /**
+     * @return number of connections to DB, which are inside of transaction, but aren't executing any statement
+     */
+    private long openTransactions()
+    {
+        return ((Number) em.createNativeQuery("SELECT count(*) FROM pg_stat_activity WHERE state = 'idle in transaction'")
+                .getSingleResult()).longValue();
+    }
+}
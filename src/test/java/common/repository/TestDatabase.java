@@ -0,0 +1,82 @@
+package common.repository;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Embedded PostgreSQL shared by tests, which need real DB (native queries, COPY). It's started by first test, that needs it,
+ * and stopped when tests finish. Schema is created by persistence unit and schema migrations, like on application start.
+ */
+public final class TestDatabase
+{
+    private static EmbeddedPostgres postgres;
+    private static EntityManagerFactory emf;
+
+    private TestDatabase(){}
+
+    /**
+     * @return factory of Entity Managers connected with embedded DB
+     */
+    public static synchronized EntityManagerFactory get()
+    {
+        if(emf != null)
+            return emf;
+        try
+        {
+            postgres = EmbeddedPostgres.start();
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Couldn't start embedded PostgreSQL", e);
+        }
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("hibernate.connection.url", postgres.getJdbcUrl("postgres", "postgres"));
+        properties.put("hibernate.connection.username", "postgres");
+        properties.put("hibernate.connection.password", "");
+        emf = Persistence.createEntityManagerFactory("defaultPersistenceUnit", properties);
+        EntityManager em = emf.createEntityManager();
+        SchemaMigrations.migrate(em);
+        em.close();
+        Runtime.getRuntime().addShutdownHook(new Thread(TestDatabase::stop));
+        return emf;
+    }
+
+    /**
+     * Deletes all tables, prices and currencies, so each test starts with empty DB
+     */
+    public static void clear()
+    {
+        EntityManager em = get().createEntityManager();
+        try
+        {
+            em.getTransaction().begin();
+            em.createNativeQuery("SET LOCAL lock_timeout = '10s'").executeUpdate();                                     // Fails, instead of waiting for transaction leaked by previous test
+            em.createNativeQuery("TRUNCATE price, price_rollup, currency, price_table RESTART IDENTITY CASCADE").executeUpdate();
+            em.getTransaction().commit();
+        }
+        finally
+        {
+            em.close();
+        }
+    }
+
+    private static synchronized void stop()
+    {
+        try
+        {
+            emf.close();
+            postgres.close();
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package models;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks slicing of price series at boundaries of binary search, for series backed by columns and by packed records.
+ */
+public class PriceSeriesTest
+{
+    private static final int[] DAYS = {10, 11, 14, 15, 20};
+    private static final float[] PRICES = {1.0f, 1.1f, 1.4f, 1.5f, 2.0f};
+
+    private static PriceSeries[] series()
+    {
+        ByteBuffer records = ByteBuffer.allocate(DAYS.length * PriceSeries.RECORD_SIZE);
+        for(int i = 0; i < DAYS.length; i++)
+            records.putInt(DAYS[i]).putFloat(PRICES[i]);
+        records.flip();
+        return new PriceSeries[]{PriceSeries.wrap(DAYS, PRICES), PriceSeries.ofRecords(records)};
+    }
+
+    @Test
+    public void sliceIncludesBothBoundaryDays()
+    {
+        for(PriceSeries series : series())
+        {
+            assertDays(series.slice(11, 15), 11, 14, 15);
+            assertDays(series.slice(10, 20), 10, 11, 14, 15, 20);
+        }
+    }
+
+    @Test
+    public void sliceBetweenPublishedDays()
+    {
+        for(PriceSeries series : series())
+        {
+            assertDays(series.slice(12, 19), 14, 15);
+            assertDays(series.slice(12, 13));                                                                           // No publication inside
+            assertDays(series.slice(0, 9));                                                                             // Before the first day
+            assertDays(series.slice(21, 30));                                                                           // After the latest day
+            assertDays(series.slice(0, 10), 10);
+            assertDays(series.slice(20, 30), 20);
+            assertDays(series.slice(Integer.MIN_VALUE, Integer.MAX_VALUE), DAYS);
+        }
+    }
+
+    @Test
+    public void reversedRangeGivesEmptySlice()
+    {
+        for(PriceSeries series : series())
+        {
+            PriceSeries slice = series.slice(15, 11);
+
+            assertTrue(slice.isEmpty());
+            assertEquals(-1, slice.getLatestDay());
+            assertTrue(Float.isNaN(slice.getLatestPrice()));
+        }
+    }
+
+    @Test
+    public void sinceIncludesProvidedDay()
+    {
+        for(PriceSeries series : series())
+        {
+            assertDays(series.since(14), 14, 15, 20);
+            assertDays(series.since(13), 14, 15, 20);
+            assertDays(series.since(20), 20);
+            assertDays(series.since(21));
+            assertDays(series.since(Integer.MIN_VALUE), DAYS);
+        }
+    }
+
+    @Test
+    public void sliceOfSliceStaysInsideIt()
+    {
+        for(PriceSeries series : series())
+        {
+            PriceSeries slice = series.slice(11, 15);
+
+            assertDays(slice.slice(0, 100), 11, 14, 15);
+            assertDays(slice.since(15), 15);
+            assertDays(slice.slice(16, 20));                                                                            // Day 20 is in series, but not in slice
+            assertEquals(1.4f, slice.slice(14, 14).getPrice(0), 0);
+            assertEquals(1.5f, slice.getLatestPrice(), 0);
+        }
+    }
+
+    @Test
+    public void emptySeriesGivesEmptySlices()
+    {
+        assertTrue(PriceSeries.EMPTY.slice(0, 100).isEmpty());
+        assertTrue(PriceSeries.EMPTY.since(0).isEmpty());
+        assertTrue(PriceSeries.ofRecords(ByteBuffer.allocate(0)).since(0).isEmpty());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void sliceDoesNotExposePricesOutsideIt()
+    {
+        series()[0].slice(11, 14).getDay(2);
+    }
+
+    @Test
+    public void pricesAreSortedAndLastPriceOfDayIsKept()
+    {
+        PriceSeries series = PriceSeries.of(Arrays.asList(new CurrencyPrice(1.5f, 15), new CurrencyPrice(1.0f, 10),
+                new CurrencyPrice(null, 12), new CurrencyPrice(1.6f, 15)));
+
+        assertDays(series, 10, 15);
+        assertEquals(1.6f, series.getLatestPrice(), 0);
+    }
+
+    private static void assertDays(PriceSeries series, int... days)
+    {
+        int[] actual = new int[series.size()];
+        for(int i = 0; i < actual.length; i++)
+            actual[i] = series.getDay(i);
+        assertArrayEquals(days, actual);
+    }
+}
@@ -0,0 +1,106 @@
+package services;
+
+import common.io.PriceStore;
+import common.repository.TestDatabase;
+import common.repository.UnitOfWork;
+import common.utils.EpochDays;
+import models.PriceSeries;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.persistence.EntityManager;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Synchronizes price store with prices in embedded PostgreSQL.
+ */
+public class CurrencyServiceImplTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private EntityManager em;
+    private PriceStore store;
+    private CurrencyServiceImpl service;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        TestDatabase.clear();
+        em = TestDatabase.get().createEntityManager();
+        store = PriceStore.open(folder.getRoot().toPath());
+        service = new CurrencyServiceImpl(new UnitOfWork(TestDatabase.get()), store);
+        em.getTransaction().begin();
+        em.createNativeQuery("INSERT INTO price_table (table_name, update_date) VALUES ('C', '2021-01-01')").executeUpdate();
+        insertPrices("USD", 300, "3.7");
+        insertPrices("EUR", 200, "4.5");
+        insertPrices("HUF", 100, "NULL");                                                                               // Only bid and ask prices
+        em.getTransaction().commit();
+    }
+
+    @After
+    public void tearDown()
+    {
+        em.close();
+    }
+
+    @Test
+    public void emptyStoreIsFilledFromStreamedPrices() throws IOException
+    {
+        assertTrue(service.synchronizePriceStore());
+
+        assertEquals(2, store.size());
+        PriceSeries dollar = store.getSeries(currencyId("USD"));
+        assertEquals(300, dollar.size());
+        assertEquals(EpochDays.of(2020, 1, 1), dollar.getDay(0));
+        assertEquals(EpochDays.of(2020, 10, 26), dollar.getLatestDay());
+        assertEquals(3.7f, dollar.getLatestPrice(), 1e-6f);
+        assertEquals(200, store.getSeries(currencyId("EUR")).size());
+        assertFalse(service.synchronizePriceStore());                                                                   // Nothing changed since
+    }
+
+    @Test
+    public void onlyChangedSeriesIsReadAgain() throws IOException
+    {
+        service.synchronizePriceStore();
+        em.getTransaction().begin();
+        em.createNativeQuery("INSERT INTO price (price, date, currency_id) SELECT 3.8, DATE '2020-10-27', id FROM currency WHERE currency_code = 'USD'")
+                .executeUpdate();
+        em.getTransaction().commit();
+
+        assertTrue(service.synchronizePriceStore());
+
+        assertEquals(301, store.getSeries(currencyId("USD")).size());
+        assertEquals(3.8f, store.getSeries(currencyId("USD")).getLatestPrice(), 1e-6f);
+        assertEquals(200, store.getSeries(currencyId("EUR")).size());
+    }
+
+    /**
+     * Inserts currency with prices for provided number of days from 2020-01-01
+     */
+    private void insertPrices(String currencyCode, int days, String price)
+    {
+        em.createNativeQuery("INSERT INTO currency (name, converter, currency_code, table_id) SELECT ?1, 1, ?1, id FROM price_table")
+                .setParameter(1, currencyCode)
+                .executeUpdate();
+        em.createNativeQuery("INSERT INTO price (price, bid_price, ask_price, date, currency_id) SELECT " + price + ", 1, 2, DATE '2020-01-01' + i, c.id " +
+                "FROM generate_series(0, ?1 - 1) i, currency c WHERE c.currency_code = ?2")
+                .setParameter(1, days)
+                .setParameter(2, currencyCode)
+                .executeUpdate();
+    }
+
+    private Long currencyId(String currencyCode)
+    {
+        return ((Number) em.createNativeQuery("SELECT id FROM currency WHERE currency_code = ?1")
+                .setParameter(1, currencyCode)
+                .getSingleResult()).longValue();
+    }
+}
@@ -0,0 +1,202 @@
+package services;
+
+import common.io.PriceStore;
+import models.Currency;
+import models.CurrencyPrice;
+import models.CurrencySummary;
+import models.MarketSnapshot;
+import models.PriceResolution;
+import models.PriceRollup;
+import models.PriceSeries;
+import models.xml.PriceTable;
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Publishes snapshots built from stub currency service and price store in temporary directory.
+ */
+public class MarketDataTest
+{
+    private static final CurrencySummary DOLLAR = new CurrencySummary(1L, "A", "dolar", "USD", 1.0, 3.7f, 10);
+    private static final CurrencySummary EURO = new CurrencySummary(2L, "A", "euro", "EUR", 1.0, 4.5f, 10);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final StubCurrencyService currencyService = new StubCurrencyService();
+    private final List<MarketSnapshot> published = Collections.synchronizedList(new ArrayList<>());
+    private MarketData marketData;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        PriceStore store = PriceStore.open(folder.getRoot().toPath());
+        store.rewrite(Collections.singletonMap(DOLLAR.getId(), PriceSeries.wrap(new int[]{9, 10}, new float[]{3.6f, 3.7f})));
+        marketData = new MarketData(currencyService, store);
+        marketData.addListener(published::add);
+        currencyService.summaries = Arrays.asList(DOLLAR, EURO);
+    }
+
+    @Test
+    public void emptySnapshotIsPublishedBeforeRefresh()
+    {
+        assertSame(MarketSnapshot.EMPTY, marketData.get());
+        assertTrue(published.isEmpty());
+    }
+
+    @Test
+    public void refreshPublishesCurrenciesAndStoredSeries()
+    {
+        MarketSnapshot snapshot = marketData.refresh();
+
+        assertSame(snapshot, marketData.get());
+        assertEquals(Collections.singletonList(snapshot), published);
+        assertEquals(Arrays.asList(DOLLAR, EURO), snapshot.getCurrencies());
+        assertSame(EURO, snapshot.getCurrency(EURO.getId()));
+        assertEquals(2, snapshot.getSeries(DOLLAR.getId()).size());
+        assertNull(snapshot.getSeries(EURO.getId()));                                                                   // Not in price store yet
+    }
+
+    @Test
+    public void eachRefreshPublishesNewerSnapshot()
+    {
+        MarketSnapshot first = marketData.refresh();
+        currencyService.summaries = Collections.singletonList(DOLLAR);
+
+        MarketSnapshot second = marketData.refresh();
+
+        assertTrue(second.getVersion() > first.getVersion());
+        assertSame(second, marketData.get());
+        assertEquals(1, second.getCurrencies().size());
+        assertEquals(2, first.getCurrencies().size());                                                                  // Published snapshot never changes
+        assertEquals(Arrays.asList(first, second), published);
+    }
+
+    @Test(timeout = 10000)
+    public void slowerOlderRefreshDoesNotReplaceNewerSnapshot() throws InterruptedException
+    {
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        currencyService.blockNextRead(reading, release);
+        AtomicReference<MarketSnapshot> olderResult = new AtomicReference<>();
+        Thread older = new Thread(() -> olderResult.set(marketData.refresh()));
+        older.start();
+        assertTrue(reading.await(5, TimeUnit.SECONDS));                                                                 // Older refresh took its version and reads data
+
+        MarketSnapshot newer = marketData.refresh();
+        release.countDown();
+        older.join();
+
+        assertSame(newer, olderResult.get());
+        assertSame(newer, marketData.get());
+        assertEquals(Collections.singletonList(newer), published);
+    }
+
+    /**
+     * Returns provided summaries, the next read may be blocked until it's released. Other methods aren't used by market data.
+     */
+    private static class StubCurrencyService implements CurrencyService
+    {
+        private volatile List<CurrencySummary> summaries = Collections.emptyList();
+        private CountDownLatch reading;
+        private CountDownLatch release;
+
+        synchronized void blockNextRead(CountDownLatch reading, CountDownLatch release)
+        {
+            this.reading = reading;
+            this.release = release;
+        }
+
+        @Override
+        public List<CurrencySummary> getCurrencySummaries()
+        {
+            CountDownLatch reading;
+            CountDownLatch release;
+            synchronized(this)
+            {
+                reading = this.reading;
+                release = this.release;
+                this.reading = null;
+                this.release = null;
+            }
+            if(reading != null)
+            {
+                reading.countDown();
+                try
+                {
+                    release.await();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return summaries;
+        }
+
+        @Override
+        public List<PriceTable> getAllTables()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<Currency> getAllCurrencies()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<CurrencySummary> getLatestPrices(DateTime asOf)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<CurrencyPrice> getPrices(String tableName, String currencyCode, DateTime from, DateTime to)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<PriceRollup> getRollups(String tableName, String currencyCode, PriceResolution resolution, DateTime from, DateTime to)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<PriceRollup> getChartPrices(String tableName, String currencyCode, DateTime from, DateTime to)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public PriceSeries getPriceSeries(Long currencyId)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Currency getCurrency(Long id)
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
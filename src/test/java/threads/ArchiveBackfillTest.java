@@ -0,0 +1,145 @@
+package threads;
+
+import com.sun.net.httpserver.HttpServer;
+import common.repository.IngestionIndex;
+import common.repository.TestDatabase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.persistence.EntityManager;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs backfill against local stub of archive server and embedded PostgreSQL, then checks stored converters and prices.
+ * Server serves archive excerpts from test resources, written like archives published by nbp.pl: Windows-1250 encoding,
+ * CRLF line endings, two header lines and footer. Each table has other columns in each year.
+ */
+public class ArchiveBackfillTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private EntityManager em;
+    private ArchiveBackfill backfill;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        TestDatabase.clear();
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            try(InputStream archive = getClass().getResourceAsStream("archive" + exchange.getRequestURI().getPath()))
+            {
+                exchange.sendResponseHeaders(archive == null ? 404 : 200, 0);                                           // Other files are missing
+                if(archive != null)
+                {
+                    try(OutputStream output = exchange.getResponseBody())
+                    {
+                        byte[] buffer = new byte[4096];
+                        int read;
+                        while((read = archive.read(buffer)) > 0)
+                            output.write(buffer, 0, read);
+                    }
+                }
+            }
+            exchange.close();
+        });
+        server.start();
+        em = TestDatabase.get().createEntityManager();
+        backfill = new ArchiveBackfill("http://localhost:" + server.getAddress().getPort(), folder.getRoot(), (stage, done, total) -> {});
+    }
+
+    @After
+    public void tearDown()
+    {
+        em.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void storesPricesInUnitsOfCurrentConverters() throws InterruptedException
+    {
+        assertEquals(16, backfill.run(em, new IngestionIndex(), 2020, 2021));
+
+        assertEquals(100.0, converter("A", "HUF"), 0);                                                                  // Created from the newest archive
+        assertEquals(1.0, converter("A", "USD"), 0);
+        assertEquals(1.2647f, price("A", "HUF", "2021-01-04"), 1e-4f);
+        assertEquals(1.27f, price("A", "HUF", "2020-12-31"), 1e-4f);                                                    // Recalculated from 1 HUF to 100 HUF
+        assertEquals(3.7361f, price("A", "USD", "2020-12-30"), 1e-4f);
+        assertEquals("dolar ameryka\u0144ski", name("A", "USD"));                                                       // Decoded from Windows-1250
+        assertEquals("2021-01-05", publicationDate("A"));
+
+        assertEquals(0, backfill.run(em, new IngestionIndex(), 2020, 2021));                                            // Stored days are skipped
+        assertEquals(16L, ((Number) em.createNativeQuery("SELECT count(*) FROM price").getSingleResult()).longValue());
+    }
+
+    @Test
+    public void storesTableWithOtherColumnsInEachYear() throws InterruptedException
+    {
+        backfill.run(em, new IngestionIndex(), 2020, 2021);
+
+        assertEquals(100.0, converter("B", "MGA"), 0);
+        assertEquals(1.0, converter("B", "ZWL"), 0);                                                                    // Published only in older archive
+        assertEquals(0.0975f, price("B", "MGA", "2021-01-07"), 1e-4f);
+        assertTrue(prices("B", "MGA", "2021-01-13").isEmpty());                                                         // Empty cell in archive
+        assertEquals(3.7395f, price("B", "PAB", "2021-01-13"), 1e-4f);
+        assertEquals(3.7361f, price("B", "PAB", "2020-12-30"), 1e-4f);                                                  // First column of older archive
+        assertEquals(0.0485f, price("B", "AFN", "2020-12-30"), 1e-4f);
+        assertEquals(0.0116f, price("B", "ZWL", "2020-12-30"), 1e-4f);
+        assertEquals("2021-01-13", publicationDate("B"));
+    }
+
+    private double converter(String table, String currencyCode)
+    {
+        return ((Number) em.createNativeQuery("SELECT c.converter FROM currency c JOIN price_table t ON t.id = c.table_id " +
+                "WHERE t.table_name = ?1 AND c.currency_code = ?2")
+                .setParameter(1, table)
+                .setParameter(2, currencyCode)
+                .getSingleResult()).doubleValue();
+    }
+
+    private String name(String table, String currencyCode)
+    {
+        return (String) em.createNativeQuery("SELECT c.name FROM currency c JOIN price_table t ON t.id = c.table_id " +
+                "WHERE t.table_name = ?1 AND c.currency_code = ?2")
+                .setParameter(1, table)
+                .setParameter(2, currencyCode)
+                .getSingleResult();
+    }
+
+    private float price(String table, String currencyCode, String date)
+    {
+        List<Number> prices = prices(table, currencyCode, date);
+        assertEquals(1, prices.size());
+        return prices.get(0).floatValue();
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Number> prices(String table, String currencyCode, String date)
+    {
+        return em.createNativeQuery("SELECT p.price FROM price p JOIN currency c ON c.id = p.currency_id " +
+                "JOIN price_table t ON t.id = c.table_id WHERE t.table_name = ?1 AND c.currency_code = ?2 AND p.date = CAST(?3 AS DATE)")
+                .setParameter(1, table)
+                .setParameter(2, currencyCode)
+                .setParameter(3, date)
+                .getResultList();
+    }
+
+    private String publicationDate(String table)
+    {
+        return (String) em.createNativeQuery("SELECT update_date FROM price_table WHERE table_name = ?1")
+                .setParameter(1, table)
+                .getSingleResult();
+    }
+}
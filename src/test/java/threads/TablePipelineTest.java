@@ -0,0 +1,109 @@
+package threads;
+
+import common.io.PriceStore;
+import common.repository.IngestionIndex;
+import common.repository.TestDatabase;
+import models.TableDefinition;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.persistence.EntityManager;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Processes latest publications of table C into embedded PostgreSQL and checks stored prices.
+ */
+public class TablePipelineTest
+{
+    private static final TableDefinition TABLE_C = TableDefinition.forName("C");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<String> savedTables = new ArrayList<>();
+    private TablePipeline pipeline;
+    private EntityManager em;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        TestDatabase.clear();
+        pipeline = new TablePipeline(TestDatabase.get(), Collections.singletonList(TABLE_C), savedTables::add,
+                new IngestionIndex(), PriceStore.open(folder.newFolder("store").toPath()));
+        em = TestDatabase.get().createEntityManager();
+    }
+
+    @After
+    public void tearDown()
+    {
+        em.close();
+    }
+
+    @Test
+    public void rowWithoutBidPriceIsSavedWhenConverterChanged() throws IOException
+    {
+        assertTrue(pipeline.processTable(TABLE_C, table("2021-01-04",
+                position("forint (Wegry)", 1, "HUF", "0,0124", "0,0127"),
+                position("dolar amerykanski", 1, "USD", "3,6826", "3,7570"))));
+        assertTrue(pipeline.processTable(TABLE_C, table("2021-01-05",                                                   // Forint is published for 100 HUF now, without bid price
+                position("forint (Wegry)", 100, "HUF", null, "1,2710"),
+                position("dolar amerykanski", 1, "USD", "3,6561", "3,7299"))));
+
+        assertEquals(Collections.nCopies(2, "C"), savedTables);
+        Object[] forint = price("HUF", "2021-01-05");
+        assertNull(forint[0]);
+        assertNull(forint[1]);
+        assertEquals(0.01271f, ((Number) forint[2]).floatValue(), 1e-6f);                                              // Stored in units of the first converter (1 HUF)
+        Object[] dollar = price("USD", "2021-01-05");
+        assertEquals((3.6561f + 3.7299f) / 2, ((Number) dollar[0]).floatValue(), 1e-4f);
+    }
+
+    /**
+     * @return price, bid price and ask price of currency from provided day
+     */
+    private Object[] price(String currencyCode, String date)
+    {
+        return (Object[]) em.createNativeQuery("SELECT p.price, p.bid_price, p.ask_price FROM price p JOIN currency c ON c.id = p.currency_id " +
+                "WHERE c.currency_code = ?1 AND p.date = CAST(?2 AS DATE)")
+                .setParameter(1, currencyCode)
+                .setParameter(2, date)
+                .getSingleResult();
+    }
+
+    private File table(String publicationDate, String... positions) throws IOException
+    {
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<tabela_kursow typ=\"C\">\n")
+                .append("<numer_tabeli>1/C/NBP/2021</numer_tabeli>\n<data_notowania>").append(publicationDate).append("</data_notowania>\n")
+                .append("<data_publikacji>").append(publicationDate).append("</data_publikacji>\n");
+        for(String position : positions)
+            xml.append(position);
+        xml.append("</tabela_kursow>\n");
+        File file = new File(folder.getRoot(), TABLE_C.getFileName());
+        Files.write(file.toPath(), xml.toString().getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    /**
+     * @param bidPrice bid price, null if position doesn't have it
+     */
+    private static String position(String name, int converter, String currencyCode, String bidPrice, String askPrice)
+    {
+        return "<pozycja>\n<nazwa_waluty>" + name + "</nazwa_waluty>\n<przelicznik>" + converter + "</przelicznik>\n" +
+                "<kod_waluty>" + currencyCode + "</kod_waluty>\n" +
+                (bidPrice == null ? "" : "<kurs_kupna>" + bidPrice + "</kurs_kupna>\n") +
+                "<kurs_sprzedazy>" + askPrice + "</kurs_sprzedazy>\n</pozycja>\n";
+    }
+}